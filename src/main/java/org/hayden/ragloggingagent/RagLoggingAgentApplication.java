@@ -1,6 +1,11 @@
 package org.hayden.ragloggingagent;
 
 import org.hayden.ragloggingagent.clients.QdrantClient;
+import org.hayden.ragloggingagent.resilience.ResilienceRegistry;
+import org.hayden.ragloggingagent.services.CollectionMigrationService;
+import org.hayden.ragloggingagent.services.EmbeddingCache;
+import org.hayden.ragloggingagent.services.LogAggregationIndex;
+import org.hayden.ragloggingagent.services.QueryResultCache;
 import org.hayden.ragloggingagent.utils.DateFormatUtil;
 import org.springframework.ai.support.ToolCallbacks;
 import org.springframework.ai.tool.ToolCallback;
@@ -20,10 +25,17 @@ public class RagLoggingAgentApplication {
     }
 
     @Bean
-    public List<ToolCallback> mcpTools(QdrantClient qdrantClient, DateFormatUtil dateFormatter) {
+    public List<ToolCallback> mcpTools(QdrantClient qdrantClient, DateFormatUtil dateFormatter, EmbeddingCache embeddingCache,
+                                       ResilienceRegistry resilienceRegistry, LogAggregationIndex aggregationIndex,
+                                       QueryResultCache queryResultCache, CollectionMigrationService migrationService) {
         return Stream.of(
                         ToolCallbacks.from(qdrantClient),
-                        ToolCallbacks.from(dateFormatter)
+                        ToolCallbacks.from(dateFormatter),
+                        ToolCallbacks.from(embeddingCache),
+                        ToolCallbacks.from(resilienceRegistry),
+                        ToolCallbacks.from(aggregationIndex),
+                        ToolCallbacks.from(queryResultCache),
+                        ToolCallbacks.from(migrationService)
                 )
                 .flatMap(Arrays::stream)
                 .toList();
@@ -1,73 +1,307 @@
 package org.hayden.ragloggingagent.clients;
 
-import com.theokanning.openai.OpenAiService;
-import com.theokanning.openai.embedding.EmbeddingRequest;
-import com.theokanning.openai.embedding.EmbeddingResult;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.hayden.ragloggingagent.resilience.ResilienceRegistry;
+import org.hayden.ragloggingagent.resilience.TokenBucket;
+import org.hayden.ragloggingagent.services.EmbeddingCache;
+import org.hayden.ragloggingagent.services.TokenizerService;
+import org.hayden.ragloggingagent.utils.LruCache;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @Service
 public class OpenAIClient {
 
-    private final OpenAiService service;
+    private static final String EMBEDDING_MODEL = "text-embedding-3-small";
+
+    // The model's full size; shorter vectors are its leading components rescaled to unit length
+    public static final int NATIVE_DIMENSIONS = 1536;
 
-    private static final int MAX_CALLS = 299000;
-    private static final AtomicInteger callCounter = new AtomicInteger(0);
     private static final Logger LOGGER = Logger.getLogger(OpenAIClient.class.getName());
-    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+
+    private final HttpClient client;
+    private final ObjectMapper objectMapper;
+    private final EmbeddingCache embeddingCache;
+    private final TokenizerService tokenizerService;
+    private final ResilienceRegistry resilience;
+
+    @Value("${openai.api.key}")
+    private String openAiApiKey;
+
+    @Value("${openai.api.url:https://api.openai.com/v1}")
+    private String openAiUrl;
+
+    // API limits for the embeddings endpoint
+    @Value("${openai.embedding.max.inputs.per.request:2048}")
+    private int maxInputsPerRequest;
+
+    @Value("${openai.embedding.max.tokens.per.request:300000}")
+    private int maxTokensPerRequest;
+
+    @Value("${openai.embedding.max.tokens.per.input:8191}")
+    private int maxTokensPerInput;
+
+    @Value("${openai.embedding.tokens.per.minute:1000000}")
+    private long tokensPerMinute;
+
+    @Value("${openai.query.cache.entries:256}")
+    private int queryCacheEntries;
+
+    // Size of new collections' vectors; an existing collection's own size takes precedence at startup
+    @Value("${openai.embedding.dimensions:1536}")
+    private volatile int dimensions;
+
+    // Refills continuously at tokensPerMinute / 60 per second, with up to a minute's worth of burst
+    private TokenBucket tokenBudget;
+
+    // Recent search queries by their trimmed text. Agents tend to repeat or page through the same query, and
+    // this skips the digest and disk lookup of the embedding cache, which is sized for log lines.
+    private LruCache<String, float[]> queryVectors;
 
     @Autowired
-    public OpenAIClient(OpenAiService service) {
-        this.service = service;
+    public OpenAIClient(HttpClient client, ObjectMapper objectMapper, EmbeddingCache embeddingCache,
+                        TokenizerService tokenizerService, ResilienceRegistry resilience) {
+        this.client = client;
+        this.objectMapper = objectMapper;
+        this.embeddingCache = embeddingCache;
+        this.tokenizerService = tokenizerService;
+        this.resilience = resilience;
     }
 
-    // Initialize the scheduler to reset the counter every minute
-    static {
-        scheduler.scheduleAtFixedRate(() -> {
-            callCounter.set(0);
-            LOGGER.info("API call counter reset.");
-        }, 1, 1, TimeUnit.MINUTES);
+    @PostConstruct
+    public void init() {
+        tokenBudget = new TokenBucket(tokensPerMinute, tokensPerMinute / 60.0);
+        queryVectors = new LruCache<>(queryCacheEntries);
+        LOGGER.info("✅ Loaded OpenAI key: " + ((openAiApiKey != null && !openAiApiKey.isEmpty()) ? "Present" : "Missing"));
     }
 
     @Tool(name="embedMessages",
             description = "Embed any list of messages into vector representations using OpenAI's text-embedding-3-small model. Use this to prepare query or document vectors for searching or inserting into the vector database.")
-    public List<double[]> embedLogMessages(List<String> messages) throws IOException, InterruptedException {
+    public List<float[]> embedLogMessages(List<String> messages) throws IOException, InterruptedException {
+        return embed(messages, dimensions);
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    // Called when the collection behind the configured name changes size, e.g. after a dimension migration
+    public void setDimensions(int dimensions) {
+        if (dimensions == this.dimensions) return;
+        this.dimensions = dimensions;
+        queryVectors.clear();
+        LOGGER.info("Embedding dimensions set to " + dimensions);
+    }
 
-        EmbeddingResult response = null;
+    public List<float[]> embed(List<String> messages, int dimensions) throws IOException, InterruptedException {
+        if (!embeddingCache.isEnabled()) {
+            return requestEmbeddings(messages, dimensions);
+        }
+        // Full-size vectors keep the plain model key, so entries cached before sizes were configurable still hit
+        String cacheModel = dimensions == NATIVE_DIMENSIONS ? EMBEDDING_MODEL : EMBEDDING_MODEL + "@" + dimensions;
+
+        // Serve what we can from the cache and send each distinct missing text to the API only once
+        float[][] vectors = new float[messages.size()][];
+        Map<String, EmbeddingCache.Key> misses = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            String message = messages.get(i);
+            if (misses.containsKey(message)) continue;
+            EmbeddingCache.Key key = embeddingCache.key(cacheModel, message);
+            vectors[i] = embeddingCache.get(key);
+            if (vectors[i] == null) {
+                misses.put(message, key);
+            }
+        }
 
-        if (callCounter.incrementAndGet() > MAX_CALLS) {
-            LOGGER.warning("Max API call limit reached. Waiting for reset.");
-            while (callCounter.get() > MAX_CALLS) {
-                Thread.sleep(100);
+        if (!misses.isEmpty()) {
+            List<String> missingMessages = new ArrayList<>(misses.keySet());
+            List<float[]> embedded = requestEmbeddings(missingMessages, dimensions);
+            Map<String, float[]> byMessage = new LinkedHashMap<>();
+            for (int i = 0; i < missingMessages.size(); i++) {
+                String message = missingMessages.get(i);
+                byMessage.put(message, embedded.get(i));
+                embeddingCache.put(misses.get(message), embedded.get(i));
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                if (vectors[i] == null) {
+                    vectors[i] = byMessage.get(messages.get(i));
+                }
             }
         }
+        return Arrays.asList(vectors);
+    }
 
-        EmbeddingRequest request = EmbeddingRequest.builder()
-                .model("text-embedding-3-small")
-                .input(messages)
+    // Vector for a search query; callers must not modify it, since cached vectors are shared
+    public float[] embedQuery(String query) throws IOException, InterruptedException {
+        String text = query.strip();
+        float[] vector = queryVectors.get(text);
+        if (vector == null || vector.length != dimensions) {
+            vector = embedLogMessages(List.of(text)).get(0);
+            queryVectors.put(text, vector);
+        }
+        return vector;
+    }
+
+    // What the dimensions parameter does server-side: keep the leading components and rescale to unit length
+    public static float[] shorten(float[] vector, int dimensions) {
+        float[] shortened = Arrays.copyOf(vector, dimensions);
+        double norm = 0;
+        for (float component : shortened) {
+            norm += component * component;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < shortened.length; i++) {
+                shortened[i] *= scale;
+            }
+        }
+        return shortened;
+    }
+
+    // Packs the inputs into as few requests as the per-request token and input limits allow,
+    // waiting on the tokens-per-minute budget before each one
+    private List<float[]> requestEmbeddings(List<String> messages, int dimensions) throws IOException, InterruptedException {
+        List<String> inputs = new ArrayList<>(messages.size());
+        List<Integer> tokenCounts = new ArrayList<>(messages.size());
+        for (String message : messages) {
+            int tokens = tokenizerService.countTokens(message);
+            if (tokens > maxTokensPerInput) {
+                LOGGER.warning("Truncating embedding input of " + tokens + " tokens to " + maxTokensPerInput);
+                message = tokenizerService.truncate(message, maxTokensPerInput);
+                tokens = maxTokensPerInput;
+            }
+            inputs.add(message);
+            tokenCounts.add(tokens);
+        }
+
+        float[][] vectors = new float[inputs.size()][];
+        for (TokenizerService.TokenBatch batch : tokenizerService.pack(tokenCounts, maxTokensPerRequest, maxInputsPerRequest)) {
+            tokenBudget.acquire(batch.tokens());
+
+            float[][] embedded;
+            try {
+                embedded = createEmbeddings(batch.indexes().stream().map(inputs::get).toList(), dimensions);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error creating embeddings: ", e);
+                throw e;
+            }
+            for (int i = 0; i < embedded.length; i++) {
+                vectors[batch.indexes().get(i)] = embedded[i];
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    // Asks for base64-encoded float32 vectors so they decode straight into float[], skipping
+    // JSON number parsing and boxed Doubles
+    private float[][] createEmbeddings(List<String> inputs, int dimensions) throws IOException, InterruptedException {
+        byte[] body = objectMapper.writeValueAsBytes(Map.of(
+                "model", EMBEDDING_MODEL,
+                "input", inputs,
+                "dimensions", dimensions,
+                "encoding_format", "base64"
+        ));
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(openAiUrl + "/embeddings"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + openAiApiKey)
                 .build();
 
-        try {
-             response = service.createEmbeddings(request);
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error creating embeddings: ", e);
-            throw e;
+        HttpResponse<InputStream> response = resilience.openAi("embeddings").execute(() ->
+                ResilienceRegistry.retryOnServerError(client.send(request, HttpResponse.BodyHandlers.ofInputStream())));
+
+        try (InputStream responseBody = response.body()) {
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                throw new IOException("Embedding request failed with status: " + response.statusCode() + " - "
+                        + new String(responseBody.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            try (JsonParser parser = objectMapper.getFactory().createParser(responseBody)) {
+                return parseEmbeddings(parser, inputs.size());
+            }
         }
+    }
 
-        return response.getData().stream()
-                .map(data -> data.getEmbedding().stream().mapToDouble(Double::doubleValue).toArray())
-                .toList();
+    // Reads data[].index and data[].embedding from an embeddings response; the embedding may be
+    // base64 (little-endian float32) or a plain JSON number array
+    static float[][] parseEmbeddings(JsonParser parser, int count) throws IOException {
+        float[][] vectors = new float[count][];
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Embedding response is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_ARRAY || !"data".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int index = -1;
+                float[] vector = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String dataField = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("index".equals(dataField)) {
+                        index = parser.getIntValue();
+                    } else if ("embedding".equals(dataField)) {
+                        vector = value == JsonToken.VALUE_STRING ? decodeBase64Floats(parser) : readFloatArray(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (index < 0 || index >= count || vector == null) {
+                    throw new IOException("Malformed embedding in response at index " + index);
+                }
+                vectors[index] = vector;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (vectors[i] == null) {
+                throw new IOException("Embedding response is missing input " + i);
+            }
+        }
+        return vectors;
     }
 
+    private static float[] decodeBase64Floats(JsonParser parser) throws IOException {
+        byte[] bytes = parser.getBinaryValue();
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
 
-}
\ No newline at end of file
+    private static float[] readFloatArray(JsonParser parser) throws IOException {
+        float[] vector = new float[1536];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == vector.length) {
+                vector = Arrays.copyOf(vector, size * 2);
+            }
+            vector[size++] = parser.getFloatValue();
+        }
+        return size == vector.length ? vector : Arrays.copyOf(vector, size);
+    }
+}
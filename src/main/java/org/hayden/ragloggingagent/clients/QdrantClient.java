@@ -1,5 +1,9 @@
 package org.hayden.ragloggingagent.clients;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import java.net.URI;
@@ -9,8 +13,14 @@ import java.net.http.HttpResponse;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hayden.ragloggingagent.models.LogFilter;
+import org.hayden.ragloggingagent.models.QdrantHit;
+import org.hayden.ragloggingagent.models.QdrantPage;
 import org.hayden.ragloggingagent.models.QdrantPoint;
-import org.hayden.ragloggingagent.utils.DateFormatUtil;
+import org.hayden.ragloggingagent.models.QdrantPointPage;
+import org.hayden.ragloggingagent.resilience.ResilienceRegistry;
+import org.hayden.ragloggingagent.services.LogAggregationIndex;
+import org.hayden.ragloggingagent.services.QueryResultCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.tool.annotation.Tool;
@@ -18,10 +28,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 @Service
 public class QdrantClient {
@@ -34,35 +53,162 @@ public class QdrantClient {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ResilienceRegistry resilience;
+
+    @Autowired
+    private LogAggregationIndex aggregationIndex;
+
+    @Autowired
+    private QueryResultCache queryCache;
+
+    @Autowired
+    private QdrantTransport transport;
+
+    @Autowired
+    private OpenAIClient openAIClient;
+
     @Value("${qdrant.url}")
     private String qdrantUrl;
 
     @Value("${qdrant.collection.name}")
     private String collectionName;
 
-    private static final int MAX_RETRIES = 5;
-    private static final long INITIAL_BACKOFF_MS = 500;
+    @Value("${qdrant.scroll.page.size:10000}")
+    private int scrollPageSize;
+
+    // Scrolls that bring vectors back: a 1536-dimension vector is ~17 KB of JSON, so 10000 of them would be ~170 MB a page
+    @Value("${qdrant.scroll.vector.page.size:256}")
+    private int vectorScrollPageSize;
+
+    @Value("${qdrant.upsert.split.size:250}")
+    private int upsertSplitSize;
+
+    @Value("${aggregation.facet.enabled:true}")
+    private boolean facetEnabled;
+
+    @Value("${aggregation.facet.limit:1000}")
+    private int facetLimit;
+
+    @Value("${aggregation.scroll.below.points:20000}")
+    private long scrollBelowPoints;
+
+    @Value("${aggregation.fanout.max.values:50}")
+    private int fanOutMaxValues;
+
+    @Value("${aggregation.fanout.parallelism:8}")
+    private int fanOutParallelism;
+
+    @Value("${aggregation.fanout.sample.points:2000}")
+    private int fanOutSamplePoints;
+
+    @Value("${qdrant.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${qdrant.hnsw.ef.construct:100}")
+    private int hnswEfConstruct;
+
+    @Value("${qdrant.hnsw.on.disk:false}")
+    private boolean hnswOnDisk;
+
+    @Value("${qdrant.vectors.on.disk:false}")
+    private boolean vectorsOnDisk;
+
+    // int8, binary or none
+    @Value("${qdrant.quantization:int8}")
+    private String quantization;
+
+    @Value("${qdrant.quantization.always.ram:true}")
+    private boolean quantizationAlwaysRam;
+
+    // Used when the collection does not report its own threshold, and to re-enable indexing left off by a crash
+    @Value("${qdrant.bulk.load.indexing.threshold:10000}")
+    private long bulkLoadIndexingThreshold;
+
+    @Value("${qdrant.bulk.load.poll.seconds:5}")
+    private long bulkLoadPollSeconds;
+
+    // Consecutive green polls that count as ready when indexing was never seen running
+    @Value("${qdrant.bulk.load.green.polls:3}")
+    private int bulkLoadGreenPolls;
+
+    @Value("${qdrant.bulk.load.ready.timeout.minutes:120}")
+    private long bulkLoadReadyTimeoutMinutes;
+
+    @Value("${qdrant.export.partitions:8}")
+    private int exportPartitions;
+
+    @Value("${qdrant.export.directory:data/exports}")
+    private String exportDirectory;
+
+    // Vector size per collection name, looked up once; 0 when Qdrant does not report one
+    private final Map<String, Integer> vectorSizes = new ConcurrentHashMap<>();
+
+    // Upserts hold the read side so an alias switch never lands between sizing a batch and sending it
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock();
+
+    // Set while a collection is being copied elsewhere: upserts to the alias are also written to the target
+    private volatile UpsertMirror mirror;
+
+    private record UpsertMirror(String alias, String target, int dimensions) {
+    }
+
+    // Collections in bulk-load mode, with the indexing threshold to restore afterwards
+    private final Map<String, Long> bulkLoads = new ConcurrentHashMap<>();
+
+    // Point IDs are non-negative longs hashed from the log line (PointIds), so equal slices of this range hold
+    // similar numbers of points. Collections still on the old 31-bit IDs land in the first slice until migrated.
+    private static final long ID_SPACE_END = Long.MAX_VALUE;
+
+    // Payload index per filterable field. Without them every filtered search, count and scroll scans payloads,
+    // and facet counts are not available. The raw line and the text timestamp are only returned, never filtered.
+    private static final Map<String, String> PAYLOAD_INDEXES = new LinkedHashMap<>();
+
+    static {
+        PAYLOAD_INDEXES.put("timestamp_ms", "integer");
+        PAYLOAD_INDEXES.put("status", "integer");
+        PAYLOAD_INDEXES.put("size", "integer");
+        PAYLOAD_INDEXES.put("response_time", "integer");
+        PAYLOAD_INDEXES.put("ip", "keyword");
+        PAYLOAD_INDEXES.put("request_type", "keyword");
+        PAYLOAD_INDEXES.put("endpoint", "keyword");
+        PAYLOAD_INDEXES.put("referer", "keyword");
+        PAYLOAD_INDEXES.put("user_agent", "keyword");
+    }
 
     public void createCollection(String collectionName) throws IOException, InterruptedException {
+        createCollection(collectionName, openAIClient.getDimensions());
+    }
+
+    // The configured name becomes an alias of '<name>_v1' rather than a collection of its own, so a dimension
+    // migration can later move the name to a new collection in one atomic step
+    public void createAliasedCollection(String alias) throws IOException, InterruptedException {
+        String collection = alias + "_v1";
+        if (!collectionExists(collection)) {
+            createCollection(collection);
+        }
+        updateAliases(List.of(Map.of("create_alias", Map.of("collection_name", collection, "alias_name", alias))));
+        LOGGER.info("Collection '{}' created behind alias '{}'", collection, alias);
+    }
+
+    public void createCollection(String collectionName, int dimensions) throws IOException, InterruptedException {
         String url = qdrantUrl + "/collections/" + collectionName;
-        String bodyJson = """
-                {
-                  "vectors": {
-                    "size": 1536,
-                    "distance": "Cosine"
-                  },
-                  "hnsw_config": {
-                    "m": 16,
-                    "ef_construct": 100
-                  },
-                  "quantization_config": {
-                    "scalar": {
-                      "type": "int8",
-                      "always_ram": true
-                    }
-                  }
-                }
-                """;
+        Map<String, Object> vectors = new LinkedHashMap<>();
+        vectors.put("size", dimensions);
+        vectors.put("distance", "Cosine");
+        vectors.put("on_disk", vectorsOnDisk);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("vectors", vectors);
+        body.put("hnsw_config", Map.of("m", hnswM, "ef_construct", hnswEfConstruct, "on_disk", hnswOnDisk));
+        switch (quantization.toLowerCase(Locale.ROOT)) {
+            case "int8" -> body.put("quantization_config",
+                    Map.of("scalar", Map.of("type", "int8", "always_ram", quantizationAlwaysRam)));
+            case "binary" -> body.put("quantization_config", Map.of("binary", Map.of("always_ram", quantizationAlwaysRam)));
+            case "none" -> {
+            }
+            default -> throw new IllegalArgumentException("Unknown qdrant.quantization '" + quantization + "'; expected int8, binary or none");
+        }
+        String bodyJson = objectMapper.writeValueAsString(body);
 
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
@@ -70,73 +216,233 @@ public class QdrantClient {
                 .header("Content-Type", "application/json")
                 .build();
 
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = send("collections", request);
+        if (response.statusCode() >= 200 && response.statusCode() < 300) {
+            createPayloadIndexes(collectionName);
+        }
     }
 
-    public void insertPoint(String collection, QdrantPoint point) throws IOException, InterruptedException {
-        String json = objectMapper.writeValueAsString(Map.of("points", List.of(point)));
-        int retries = 0;
-        long backoff = INITIAL_BACKOFF_MS;
+    // Creates whichever payload indexes are missing; existing collections get them on startup, and Qdrant
+    // indexes the points already stored in the background
+    public void createPayloadIndexes(String collectionName) throws IOException, InterruptedException {
+        HttpRequest lookup = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/collections/" + collectionName))
+                .GET()
+                .build();
+        HttpResponse<String> collection = send("collections", lookup);
+        JsonNode schema = objectMapper.readTree(collection.body()).path("result").path("payload_schema");
 
+        for (Map.Entry<String, String> index : PAYLOAD_INDEXES.entrySet()) {
+            if (schema.has(index.getKey())) continue;
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(qdrantUrl + "/collections/" + collectionName + "/index?wait=true"))
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(
+                            Map.of("field_name", index.getKey(), "field_schema", index.getValue()))))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> response = send("index", request);
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                throw new IOException("Failed to create payload index on '" + index.getKey() + "': "
+                        + response.statusCode() + " - " + response.body());
+            }
+            LOGGER.info("Created {} payload index on '{}' in '{}'", index.getValue(), index.getKey(), collectionName);
+        }
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(qdrantUrl + "/collections/" + collection + "/points?wait=true"))
-                .PUT(HttpRequest.BodyPublishers.ofString(json))
-                .header("Content-Type", "application/json")
-                .build();
-        while (retries < MAX_RETRIES) {
-            try {
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                    return;
-                } else if (response.statusCode() == 429 || response.statusCode() == 503) {
-                    LOGGER.warn("Rate limit hit or service unavailable. Retrying...");
-                } else {
-                    throw new IOException("Request failed with status: " + response.statusCode() + " - " + response.body());
-                }
-            } catch (Exception e) {
-                LOGGER.error("Error inserting point into Qdrant: {}", e.getMessage());
+    public void insertPoint(String collection, QdrantPoint point) throws IOException, InterruptedException {
+        insertPointsInBulk(collection, List.of(point));
+    }
+
+    // Throttling and transient failures are retried by the resilience layer; anything else, including
+    // running out of attempts, surfaces as an exception instead of silently dropping the batch
+    public void insertPointsInBulk(String collection, List<QdrantPoint> points) throws IOException, InterruptedException {
+        switchLock.readLock().lock();
+        try {
+            List<CompletableFuture<Void>> parts = new ArrayList<>();
+            upsertSplit(collection, fitVectors(points, vectorSize(collection)), parts);
+            // While the collection is copied elsewhere, new points also go to the copy
+            UpsertMirror copy = mirror;
+            if (copy != null && copy.alias().equals(collection)) {
+                upsertSplit(copy.target(), fitVectors(points, copy.dimensions()), parts);
             }
+            await(CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)));
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
 
-            // Wait before retrying
-            Thread.sleep(backoff);
-            backoff *= 2;
-            retries++;
+    // Large batches go out as several smaller upserts in flight at once
+    private void upsertSplit(String collection, List<QdrantPoint> points, List<CompletableFuture<Void>> parts) {
+        int split = Math.max(1, upsertSplitSize);
+        for (int from = 0; from < points.size(); from += split) {
+            parts.add(transport.upsert(collection, points.subList(from, Math.min(points.size(), from + split)),
+                    !bulkLoads.containsKey(collection)));
         }
-        LOGGER.error("Max Retries Reached without success");
+    }
 
+    // Vectors of another size than the collection's, e.g. embedded before a dimension migration, are shortened,
+    // or re-embedded from the raw log line when they are too short to shorten
+    private List<QdrantPoint> fitVectors(List<QdrantPoint> points, int dimensions) throws IOException, InterruptedException {
+        if (dimensions <= 0 || points.stream().allMatch(point -> point.vector.length == dimensions)) return points;
+
+        List<QdrantPoint> fitted = new ArrayList<>(points.size());
+        List<Integer> tooShort = new ArrayList<>();
+        List<String> rawLines = new ArrayList<>();
+        for (QdrantPoint point : points) {
+            QdrantPoint copy = new QdrantPoint();
+            copy.id = point.id;
+            copy.payload = point.payload;
+            if (point.vector.length == dimensions) {
+                copy.vector = point.vector;
+            } else if (point.vector.length > dimensions) {
+                copy.vector = OpenAIClient.shorten(point.vector, dimensions);
+            } else if (point.payload != null && point.payload.get("raw") instanceof String raw) {
+                tooShort.add(fitted.size());
+                rawLines.add(raw);
+            } else {
+                throw new IOException("Point " + point.id + " has " + point.vector.length + " dimensions, needs "
+                        + dimensions + ", and no raw line to re-embed");
+            }
+            fitted.add(copy);
+        }
+        if (!tooShort.isEmpty()) {
+            List<float[]> vectors = openAIClient.embed(rawLines, dimensions);
+            for (int i = 0; i < tooShort.size(); i++) {
+                fitted.get(tooShort.get(i)).vector = vectors.get(i);
+            }
+        }
+        return fitted;
     }
 
-    public void insertPointsInBulk(String collection, List<QdrantPoint> points) throws IOException, InterruptedException {
-        String json = objectMapper.writeValueAsString(Map.of("points", points));
-        int retries = 0;
-        long backoff = INITIAL_BACKOFF_MS;
+    public int vectorSize(String collection) throws IOException, InterruptedException {
+        Integer size = vectorSizes.get(collection);
+        if (size == null) {
+            size = collectionInfo(collection).path("config").path("params").path("vectors").path("size").asInt();
+            vectorSizes.put(collection, size);
+        }
+        return size;
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(qdrantUrl + "/collections/" + collection + "/points?wait=true"))
-                .PUT(HttpRequest.BodyPublishers.ofString(json))
-                .header("Content-Type", "application/json")
-                .build();
+    // Bulk-load mode for backfills: HNSW indexing is switched off (indexing_threshold 0) and upserts are sent
+    // without waiting for Qdrant to apply them, so loading is bounded by how fast points can be queued.
+    // endBulkLoad restores the threshold and waits until the collection is green again, i.e. fully indexed.
+    public void beginBulkLoad(String collection) throws IOException, InterruptedException {
+        JsonNode threshold = collectionInfo(collection).path("config").path("optimizer_config").path("indexing_threshold");
+        long previous = threshold.isIntegralNumber() ? threshold.asLong() : bulkLoadIndexingThreshold;
+        updateOptimizers(collection, Map.of("indexing_threshold", 0));
+        bulkLoads.put(collection, previous);
+        LOGGER.info("Bulk load of '{}' started: indexing deferred (threshold was {}), upserts unacknowledged",
+                collection, previous);
+    }
 
-        while (retries < MAX_RETRIES) {
-            try {
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                    return;
-                } else if (response.statusCode() == 429 || response.statusCode() == 503) {
-                    LOGGER.warn("Rate limit hit or service unavailable. Retrying...");
-                } else {
-                    throw new IOException("Request failed with status: " + response.statusCode() + " - " + response.body());
+    // True once the collection is green again; false if that takes longer than qdrant.bulk.load.ready.timeout.minutes
+    public boolean endBulkLoad(String collection) throws IOException, InterruptedException {
+        Long previous = bulkLoads.remove(collection);
+        if (previous == null) return true;
+        updateOptimizers(collection, Map.of("indexing_threshold", previous));
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MINUTES.toNanos(bulkLoadReadyTimeoutMinutes);
+        long lastIndexed = -1;
+        long lastPoll = start;
+        // Right after the threshold is restored the optimizer may not have started yet and the collection still
+        // reads green. Green counts once indexing has caught up, once it was seen running, or once it has held
+        // for a few polls in a row.
+        boolean sawIndexing = false;
+        int greenPolls = 0;
+        while (true) {
+            JsonNode info = collectionInfo(collection);
+            String status = info.path("status").asText();
+            long points = info.path("points_count").asLong();
+            long indexed = info.path("indexed_vectors_count").asLong();
+            long now = System.nanoTime();
+            if ("green".equals(status)) {
+                greenPolls++;
+                if (sawIndexing || indexed >= points || greenPolls >= bulkLoadGreenPolls) {
+                    LOGGER.info("Bulk load of '{}' finished: {} points, {} vectors indexed in {} s",
+                            collection, points, indexed, TimeUnit.NANOSECONDS.toSeconds(now - start));
+                    return true;
                 }
-            } catch (Exception e) {
-                LOGGER.error("Error inserting points in bulk: {}", e.getMessage());
+            } else {
+                sawIndexing = true;
+                greenPolls = 0;
+            }
+            // Rate since the previous poll; the first poll has nothing to compare with
+            double rate = lastIndexed < 0 ? 0 : (indexed - lastIndexed) / Math.max(1e-9, (now - lastPoll) / 1e9);
+            LOGGER.info("Waiting for '{}' to finish indexing: status {}, {}/{} vectors indexed, {} vectors/s",
+                    collection, status, indexed, points, Math.round(Math.max(0, rate)));
+            if (now - deadline > 0) {
+                LOGGER.warn("Collection '{}' is still {} after {} minutes; continuing without waiting",
+                        collection, status, bulkLoadReadyTimeoutMinutes);
+                return false;
             }
+            lastIndexed = indexed;
+            lastPoll = now;
+            Thread.sleep(TimeUnit.SECONDS.toMillis(bulkLoadPollSeconds));
+        }
+    }
+
+    // Forgets a bulk load without restoring indexing, for a collection that is about to be thrown away
+    public void abandonBulkLoad(String collection) {
+        bulkLoads.remove(collection);
+    }
 
-            // Wait before retrying
-            Thread.sleep(backoff);
-            backoff *= 2;
-            retries++;
+    // The threshold a bulk load replaces lives only in memory, so a crash mid-load (or mid-migration) leaves
+    // indexing switched off for good. At startup any of our collections still at 0 gets the configured
+    // threshold back; targets of an abandoned migration are named after the collection too.
+    public void restoreIndexing() throws IOException, InterruptedException {
+        for (String collection : listCollections()) {
+            if (!collection.equals(collectionName) && !collection.startsWith(collectionName + "_")) continue;
+            if (bulkLoads.containsKey(collection)) continue;
+            JsonNode threshold = collectionInfo(collection).path("config").path("optimizer_config").path("indexing_threshold");
+            if (threshold.isIntegralNumber() && threshold.asLong() == 0) {
+                LOGGER.warn("Indexing of '{}' is still off from an interrupted bulk load; restoring threshold {}",
+                        collection, bulkLoadIndexingThreshold);
+                updateOptimizers(collection, Map.of("indexing_threshold", bulkLoadIndexingThreshold));
+            }
+        }
+    }
+
+    private List<String> listCollections() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/collections"))
+                .GET()
+                .build();
+        HttpResponse<String> response = send("collections", request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Failed to list collections: " + response.statusCode() + " - " + response.body());
+        }
+        List<String> names = new ArrayList<>();
+        for (JsonNode collection : objectMapper.readTree(response.body()).path("result").path("collections")) {
+            names.add(collection.path("name").asText());
+        }
+        return names;
+    }
 
+    private JsonNode collectionInfo(String collection) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/collections/" + collection))
+                .GET()
+                .build();
+        HttpResponse<String> response = send("collections", request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Failed to read collection '" + collection + "': " + response.statusCode() + " - " + response.body());
+        }
+        return objectMapper.readTree(response.body()).path("result");
+    }
+
+    // Collection settings are changed on the collection itself, so an alias is resolved first
+    private void updateOptimizers(String collection, Map<String, Object> optimizers) throws IOException, InterruptedException {
+        String target = aliasTarget(collection);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/collections/" + (target != null ? target : collection)))
+                .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(
+                        objectMapper.writeValueAsBytes(Map.of("optimizers_config", optimizers))))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = send("collections", request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Failed to update optimizers of '" + collection + "': " + response.statusCode() + " - " + response.body());
         }
     }
 
@@ -150,7 +456,7 @@ public class QdrantClient {
                 .build();
 
         try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = send("upsert", request);
 
             if (response.statusCode() < 200 || response.statusCode() >= 300) {
                 throw new IOException("Failed to update point: " + response.body());
@@ -171,7 +477,7 @@ public class QdrantClient {
                 .build();
 
         try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = send("collections", request);
             return response.statusCode() >= 200 && response.statusCode() < 300;
         } catch (Exception e) {
             LOGGER.error("Error checking collection existence: {}", e.getMessage());
@@ -182,7 +488,7 @@ public class QdrantClient {
     }
 
 
-    public boolean pointExists(String collectionName, int pointId) throws IOException, InterruptedException {
+    public boolean pointExists(String collectionName, long pointId) throws IOException, InterruptedException {
         String url = qdrantUrl + "/collections/" + collectionName + "/points/" + pointId;
 
         HttpRequest request = HttpRequest.newBuilder()
@@ -191,7 +497,7 @@ public class QdrantClient {
                 .build();
 
         try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = send("points.get", request);
 
 
             return response.statusCode() >= 200 && response.statusCode() < 300;
@@ -203,40 +509,76 @@ public class QdrantClient {
     }
 
 
-    @Tool(
-            name = "Qdrant_Vector_Similarity_Search",
-            description = "Search for the most similar vectors in a Qdrant collection. Provide the collection name, a query vector, and the number of similar results to return (limit). Returns the closest points with their payloads."
-    )
-    public HttpResponse<String> search(double[] vector, int limit) throws
-            IOException, InterruptedException {
-        String url = qdrantUrl + "/collections/" + collectionName + "/points/search";
+    // Single batched lookup returning which of the given IDs are already stored
+    public Set<Long> findExistingPointIds(String collectionName, Collection<Long> pointIds) throws IOException, InterruptedException {
+        String url = qdrantUrl + "/collections/" + collectionName + "/points";
 
-        // Build the JSON payload
-        String vectorJson = objectMapper.writeValueAsString(vector);
-        String bodyJson = """
-                {
-                  "vector": %s,
-                  "limit": %d,
-                   "with_payload": true,
-                   "params": {
-                     "ef": 64
-                   }
-                }
-                """.formatted(vectorJson, limit);
+        String bodyJson = objectMapper.writeValueAsString(Map.of(
+                "ids", pointIds,
+                "with_payload", false,
+                "with_vector", false
+        ));
 
-        // Create the HTTP request
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
                 .POST(HttpRequest.BodyPublishers.ofString(bodyJson))
+                .header("Content-Type", "application/json")
                 .build();
 
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = send("points.lookup", request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Failed to look up points: " + response.statusCode() + " - " + response.body());
+        }
+
+        Set<Long> existing = new HashSet<>();
+        for (JsonNode point : objectMapper.readTree(response.body()).path("result")) {
+            existing.add(point.path("id").asLong());
+        }
+        return existing;
+    }
+
+    private HttpResponse<String> send(String endpoint, HttpRequest request) throws IOException, InterruptedException {
+        return resilience.qdrant(endpoint).execute(() ->
+                ResilienceRegistry.retryOnServerError(client.send(request, HttpResponse.BodyHandlers.ofString())));
+    }
+
+    @Tool(
+            name = "Qdrant_Vector_Similarity_Search",
+            description = "Search for the most similar vectors in a Qdrant collection. Provide the collection name, a query vector, and the number of similar results to return (limit). Returns the closest points with their payloads."
+    )
+    public List<QdrantHit> search(float[] vector, int limit) throws IOException, InterruptedException {
+        return await(transport.search(collectionName, vector, limit, null));
+    }
 
-        // Execute the request
-        return response;
+    @Tool(
+            name = "Qdrant_Semantic_Search",
+            description = "Search log entries by meaning: give the query as plain text (e.g. 'payment failures after a timeout') and it is embedded on the server, so no vector needs to be sent. Optionally restrict results with metadata filters: timestamp range, status code, IP, request type, endpoint, size, referer, user agent, or response time. Use null for filters you don't want to apply. Returns up to limit closest points with their payloads and similarity scores."
+    )
+    public List<QdrantHit> semanticSearch(
+            String query,
+            int limit,
+            String startTimestamp,
+            String endTimestamp,
+            String statusCode,
+            String ip,
+            String requestType,
+            String endpoint,
+            String size,
+            String referer,
+            String userAgent,
+            String responseTime
+    ) throws IOException, InterruptedException {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Query text must not be empty");
+        }
+        LogFilter filter = LogFilter.of(startTimestamp, endTimestamp, statusCode, ip, requestType, endpoint, size, referer, userAgent, responseTime);
+        return queryCache.get(collectionName, "semantic", Arrays.asList(query.strip(), filter, limit), () -> {
+            float[] vector = openAIClient.embedQuery(query);
+            return await(transport.search(collectionName, vector, limit, filter));
+        });
     }
 
-    public HttpResponse<String> getPoints(List<Integer> pointIds) throws
+    public HttpResponse<String> getPoints(List<Long> pointIds) throws
             IOException, InterruptedException {
         String url = qdrantUrl + "/collections/" + collectionName + "/points";
 
@@ -252,7 +594,7 @@ public class QdrantClient {
                 .build();
 
         try {
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = send("points.lookup", request);
             return response;
         } catch (Exception e) {
             LOGGER.error("Error fetching points: {}", e.getMessage());
@@ -263,102 +605,152 @@ public class QdrantClient {
 
     @Tool(
             name = "Qdrant_Get_All_Points",
-            description = "Recursively fetch all points from a Qdrant collection. Provide the collection name and an initial offset (usually 0). Returns a map of point IDs to their payloads."
+            description = "Export every log entry in the collection (point ID and full log payload) to an NDJSON file, one JSON object per line, optionally restricted by metadata filters. Provide the output file name, relative to the export directory (null for a generated name), timestamp range, status code, IP, request type, endpoint, size, referer, user agent, or response time. Use null for anything you don't want to specify. Returns the file path and the number of points written."
     )
-    public Map<Integer, String> getAllPointsRecursively(int initialOffset) throws IOException, InterruptedException {
-        Map<Integer, String> allPoints = new ConcurrentHashMap<>();
-        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-
-        AtomicInteger activeTasks = new AtomicInteger(0);
-        CompletableFuture<Void> done = new CompletableFuture<>();
-
-        // Start recursive fetching
-        fetchChunkAsync(initialOffset, allPoints, executorService, activeTasks, done);
-
-        // Wait until all recursive fetches are complete
-        done.join();
-        executorService.shutdown();
-        executorService.awaitTermination(1, TimeUnit.HOURS);
-
-        return allPoints;
+    public Map<String, Object> exportAllPoints(
+            String outputPath,
+            String startTimestamp,
+            String endTimestamp,
+            String statusCode,
+            String ip,
+            String requestType,
+            String endpoint,
+            String size,
+            String referer,
+            String userAgent,
+            String responseTime
+    ) throws IOException, InterruptedException {
+        LogFilter filter = LogFilter.of(startTimestamp, endTimestamp, statusCode, ip, requestType, endpoint, size, referer, userAgent, responseTime);
+        Path path = exportPath(outputPath != null ? outputPath
+                : collectionName + "-" + System.currentTimeMillis() + ".ndjson");
+        Files.createDirectories(path.getParent());
+
+        long points;
+        // CREATE_NEW: an export never overwrites an existing file
+        OutputStream file = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW);
+        try {
+            points = writeExport(file, filter);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // A partial export is of no use and would make a retry under the same name fail
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        LOGGER.info("Exported {} points from {} to {}", points, collectionName, path);
+        return Map.of("path", path.toAbsolutePath().toString(), "points", points);
     }
 
-    private void fetchChunkAsync(int offset, Map<Integer, String> allPoints,
-                                 ExecutorService executorService, AtomicInteger activeTasks, CompletableFuture<Void> done) {
-
-        activeTasks.incrementAndGet();
+    // Writes the filtered points as NDJSON and closes the stream
+    private long writeExport(OutputStream file, LogFilter filter) throws IOException, InterruptedException {
+        try (OutputStream out = new BufferedOutputStream(file, 1 << 16);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            long points = scrollAllPoints(filter, point -> {
+                try {
+                    generator.writeStartObject();
+                    generator.writeNumberField("id", point.id());
+                    generator.writeObjectField("payload", point.payload());
+                    generator.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (points > 0) generator.writeRaw('\n');
+            return points;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
-        String url = qdrantUrl + "/collections/" + collectionName + "/points/scroll";
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("with_payload", true);
-        payload.put("with_vector", false);
-        payload.put("limit", 10000);
-        if (offset != 0) {
-            payload.put("offset", offset);
+    // Exports may only land inside the export directory: the tool's caller is a model, not an operator
+    Path exportPath(String name) {
+        Path relative = Path.of(name).normalize();
+        if (relative.isAbsolute() || relative.toString().isEmpty() || relative.startsWith("..")) {
+            throw new IllegalArgumentException("Export path must be relative to the export directory: " + name);
         }
+        Path root = Path.of(exportDirectory).toAbsolutePath().normalize();
+        Path path = root.resolve(relative).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Export path must be relative to the export directory: " + name);
+        }
+        return path;
+    }
 
+    // Full scroll of the filtered collection, split into ID ranges that are scrolled concurrently. Each range starts
+    // its scroll at its lower bound and stops at the first ID past its upper bound. Pages are handed over through a
+    // small bounded queue, so the consumer runs on the calling thread, sees points in no particular order, and slows
+    // the range scrolls down when it cannot keep up.
+    public long scrollAllPoints(LogFilter filter, Consumer<QdrantHit> consumer) throws IOException, InterruptedException {
+        int partitions = Math.max(1, exportPartitions);
+        BlockingQueue<List<QdrantHit>> pages = new ArrayBlockingQueue<>(partitions * 2);
+        List<QdrantHit> partitionDone = new ArrayList<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        long points = 0;
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
         try {
-            String bodyJson = objectMapper.writeValueAsString(payload);
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .POST(HttpRequest.BodyPublishers.ofString(bodyJson))
-                    .header("Content-Type", "application/json")
-                    .build();
-
-            client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                    .thenAccept(response -> {
+            long width = ID_SPACE_END / partitions;
+            for (int i = 0; i < partitions; i++) {
+                long from = width * i;
+                // The last slice is open-ended so it also covers ID_SPACE_END itself
+                Long to = i == partitions - 1 ? null : width * (i + 1);
+                workers.submit(() -> {
+                    try {
+                        scrollPartition(filter, from, to, pages);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
                         try {
-                            if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                                JsonNode responseBody = objectMapper.readTree(response.body());
-                                JsonNode points = responseBody.path("result").path("points");
-                                JsonNode nextPageOffset = responseBody.path("result").path("next_page_offset");
-
-                                for (JsonNode point : points) {
-                                    int id = point.path("id").asInt();
-                                    String word = point.path("payload").path("word").asText();
-                                    allPoints.put(id, word);
-                                }
-
-                                if (!nextPageOffset.isNull()) {
-                                    int nextOffset = nextPageOffset.asInt();
-                                    fetchChunkAsync(nextOffset, allPoints, executorService, activeTasks, done);
-                                }
-                            } else {
-                                LOGGER.error("Failed to fetch points at offset {}: {}", offset, response.body());
-                            }
-                        } catch (Exception e) {
-                            LOGGER.error("Error processing async response at offset {}: {}", offset, e.getMessage());
-                        } finally {
-                            int remaining = activeTasks.decrementAndGet();
-                            if (remaining == 0) {
-                                done.complete(null);
-                            }
-                        }
-                    })
-                    .exceptionally(e -> {
-                        LOGGER.error("Async error fetching points at offset {}: {}", offset, e.getMessage());
-                        int remaining = activeTasks.decrementAndGet();
-                        if (remaining == 0) {
-                            done.complete(null);
+                            pages.put(partitionDone);
+                        } catch (InterruptedException ignored) {
+                            // Cancelled; the caller is no longer draining
                         }
-                        return null;
-                    });
+                    }
+                });
+            }
 
-        } catch (Exception e) {
-            LOGGER.error("Error preparing async request at offset {}: {}", offset, e.getMessage());
-            int remaining = activeTasks.decrementAndGet();
-            if (remaining == 0) {
-                done.complete(null);
+            int running = partitions;
+            while (running > 0) {
+                List<QdrantHit> page = pages.take();
+                if (failure.get() != null) break;
+                if (page == partitionDone) {
+                    running--;
+                    continue;
+                }
+                page.forEach(consumer);
+                points += page.size();
             }
+        } finally {
+            workers.shutdownNow();
+            workers.close();
+        }
+
+        Exception e = failure.get();
+        if (e instanceof IOException io) throw io;
+        if (e instanceof InterruptedException ie) throw ie;
+        if (e != null) throw new IOException("Scroll partition failed", e);
+        return points;
+    }
+
+    private void scrollPartition(LogFilter filter, long from, Long to, BlockingQueue<List<QdrantHit>> pages)
+            throws IOException, InterruptedException {
+        Long offset = from;
+        while (offset != null) {
+            QdrantPage result = await(transport.scroll(collectionName, filter, offset, scrollPageSize));
+            List<QdrantHit> page = to == null ? result.points()
+                    : result.points().stream().filter(point -> point.id() < to).toList();
+            if (!page.isEmpty()) pages.put(page);
+            offset = result.nextOffset() != null && (to == null || result.nextOffset() < to) ? result.nextOffset() : null;
         }
     }
 
     @Tool(
             name = "Qdrant_Metadata_Filtered_Search",
-            description = "Search Qdrant for log entries filtered by any metadata: timestamp range, status code, IP, request type, endpoint, size, referer, user agent, or response time. Provide the collection name, any combination of filters, and a result limit. Use null for any filters you don't want to apply."
+            description = "Search Qdrant for log entries filtered by any metadata: timestamp range, status code, IP, request type, endpoint, size, referer, user agent, or response time. Status code, size and response time take a number or an inclusive range such as 500-599, 1000- or -99. Provide the collection name, any combination of filters, and a result limit. Use null for any filters you don't want to apply."
     )
-    public HttpResponse<String> searchByMetadata(
+    public List<QdrantHit> searchByMetadata(
             String startTimestamp,
             String endTimestamp,
             String statusCode,
@@ -371,68 +763,15 @@ public class QdrantClient {
             String responseTime,
             int limit
     ) throws IOException, InterruptedException {
-        String url = qdrantUrl + "/collections/" + collectionName + "/points/search";
-
-        startTimestamp = DateFormatUtil.toIso8601(startTimestamp);
-        endTimestamp = DateFormatUtil.toIso8601(endTimestamp);
-
-
-        startTimestamp = DateFormatUtil.toLogFormat(startTimestamp);
-        endTimestamp = DateFormatUtil.toLogFormat(endTimestamp);
-
-        Map<String, Object> filter = new HashMap<>();
-        List<Map<String, Object>> must = new ArrayList<>();
-
-        if (startTimestamp != null && endTimestamp != null) {
-            must.add(Map.of("key", "timestamp", "range", Map.of("gte", startTimestamp, "lte", endTimestamp)));
-        }
-        if (statusCode != null) {
-            must.add(Map.of("key", "status", "match", Map.of("value", statusCode)));
-        }
-        if (ip != null) {
-            must.add(Map.of("key", "ip", "match", Map.of("value", ip)));
-        }
-        if (requestType != null) {
-            must.add(Map.of("key", "request_type", "match", Map.of("value", requestType)));
-        }
-        if (endpoint != null) {
-            must.add(Map.of("key", "endpoint", "match", Map.of("value", endpoint)));
-        }
-        if (size != null) {
-            must.add(Map.of("key", "size", "match", Map.of("value", size)));
-        }
-        if (referer != null) {
-            must.add(Map.of("key", "referer", "match", Map.of("value", referer)));
-        }
-        if (userAgent != null) {
-            must.add(Map.of("key", "user_agent", "match", Map.of("value", userAgent)));
-        }
-        if (responseTime != null) {
-            must.add(Map.of("key", "response_time", "match", Map.of("value", responseTime)));
-        }
-        if (!must.isEmpty()) {
-            filter.put("must", must);
-        }
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("filter", filter);
-        body.put("limit", limit);
-        body.put("with_payload", true);
-
-        String bodyJson = objectMapper.writeValueAsString(body);
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .POST(HttpRequest.BodyPublishers.ofString(bodyJson))
-                .header("Content-Type", "application/json")
-                .build();
-
-        return client.send(request, HttpResponse.BodyHandlers.ofString());
+        LogFilter filter = LogFilter.of(startTimestamp, endTimestamp, statusCode, ip, requestType, endpoint, size, referer, userAgent, responseTime);
+        // A filter-only query has no vector to rank by, so this is the first page of a filtered scroll
+        return queryCache.get(collectionName, "search", Arrays.asList(filter, limit),
+                () -> await(transport.scroll(collectionName, filter, null, limit)).points());
     }
 
     @Tool(
             name = "Qdrant_Count_Logs_by_Filter",
-            description = "Count the number of log entries in a Qdrant collection matching any combination of metadata filters. Provide the collection name, any filters (timestamp range, status code, IP, request type, endpoint, size, referer, user agent, response time), and use null for filters you don't want to apply."
+            description = "Count the number of log entries in a Qdrant collection matching any combination of metadata filters. Provide the collection name, any filters (timestamp range, status code, IP, request type, endpoint, size, referer, user agent, response time; status code, size and response time also take an inclusive range such as 500-599), and use null for filters you don't want to apply."
     )
     public int countLogsByFilter(
             String startTimestamp,
@@ -446,44 +785,8 @@ public class QdrantClient {
             String userAgent,
             String responseTime
     ) throws IOException, InterruptedException {
-        String url = qdrantUrl + "/collections/" + collectionName + "/points/count";
-        Map<String, Object> filter = new HashMap<>();
-        List<Map<String, Object>> must = new ArrayList<>();
-
-        startTimestamp = DateFormatUtil.toIso8601(startTimestamp);
-        endTimestamp = DateFormatUtil.toIso8601(endTimestamp);
-
-
-        startTimestamp = DateFormatUtil.toLogFormat(startTimestamp);
-        endTimestamp = DateFormatUtil.toLogFormat(endTimestamp);
-
-        if (startTimestamp != null && endTimestamp != null) {
-            must.add(Map.of("key", "timestamp", "range", Map.of("gte", startTimestamp, "lte", endTimestamp)));
-        }
-        if (statusCode != null) must.add(Map.of("key", "status", "match", Map.of("value", statusCode)));
-        if (ip != null) must.add(Map.of("key", "ip", "match", Map.of("value", ip)));
-        if (requestType != null) must.add(Map.of("key", "request_type", "match", Map.of("value", requestType)));
-        if (endpoint != null) must.add(Map.of("key", "endpoint", "match", Map.of("value", endpoint)));
-        if (size != null) must.add(Map.of("key", "size", "match", Map.of("value", size)));
-        if (referer != null) must.add(Map.of("key", "referer", "match", Map.of("value", referer)));
-        if (userAgent != null) must.add(Map.of("key", "user_agent", "match", Map.of("value", userAgent)));
-        if (responseTime != null) must.add(Map.of("key", "response_time", "match", Map.of("value", responseTime)));
-        if (!must.isEmpty()) filter.put("must", must);
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("filter", filter);
-
-        String bodyJson = objectMapper.writeValueAsString(body);
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .POST(HttpRequest.BodyPublishers.ofString(bodyJson))
-                .header("Content-Type", "application/json")
-                .build();
-
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        JsonNode json = objectMapper.readTree(response.body());
-        return json.path("result").path("count").asInt();
+        LogFilter filter = LogFilter.of(startTimestamp, endTimestamp, statusCode, ip, requestType, endpoint, size, referer, userAgent, responseTime);
+        return queryCache.get(collectionName, "count", filter, () -> Math.toIntExact(await(transport.count(collectionName, filter))));
     }
 
     @Tool(
@@ -503,75 +806,106 @@ public class QdrantClient {
             String userAgent,
             String responseTime
     ) throws IOException, InterruptedException {
-        // Qdrant does not support server-side aggregation, so fetch and aggregate client-side
-        List<Map<String, Object>> allLogs = new ArrayList<>();
-        int offset = 0, limit = 10000;
-        boolean hasMore = true;
-        startTimestamp = DateFormatUtil.toIso8601(startTimestamp);
-        endTimestamp = DateFormatUtil.toIso8601(endTimestamp);
-
-
-        startTimestamp = DateFormatUtil.toLogFormat(startTimestamp);
-        endTimestamp = DateFormatUtil.toLogFormat(endTimestamp);
-
-        while (hasMore) {
-            String url = qdrantUrl + "/collections/" + collectionName + "/points/scroll";
-            Map<String, Object> filter = new HashMap<>();
-            List<Map<String, Object>> must = new ArrayList<>();
-            if (startTimestamp != null && endTimestamp != null)
-                must.add(Map.of("key", "timestamp", "range", Map.of("gte", startTimestamp, "lte", endTimestamp)));
-            if (statusCode != null) must.add(Map.of("key", "status", "match", Map.of("value", statusCode)));
-            if (ip != null) must.add(Map.of("key", "ip", "match", Map.of("value", ip)));
-            if (requestType != null) must.add(Map.of("key", "request_type", "match", Map.of("value", requestType)));
-            if (endpoint != null) must.add(Map.of("key", "endpoint", "match", Map.of("value", endpoint)));
-            if (size != null) must.add(Map.of("key", "size", "match", Map.of("value", size)));
-            if (referer != null) must.add(Map.of("key", "referer", "match", Map.of("value", referer)));
-            if (userAgent != null) must.add(Map.of("key", "user_agent", "match", Map.of("value", userAgent)));
-            if (responseTime != null) must.add(Map.of("key", "response_time", "match", Map.of("value", responseTime)));
-            if (!must.isEmpty()) filter.put("must", must);
-
-            Map<String, Object> body = new HashMap<>();
-            body.put("with_payload", true);
-            body.put("with_vector", false);
-            body.put("limit", limit);
-            if (!filter.isEmpty()) body.put("filter", filter);
-            if (offset != 0) body.put("offset", offset);
-
-            String bodyJson = objectMapper.writeValueAsString(body);
+        LogFilter filter = LogFilter.of(startTimestamp, endTimestamp, statusCode, ip, requestType, endpoint, size, referer, userAgent, responseTime);
+        return queryCache.get(collectionName, "aggregate", Arrays.asList(aggregateField, filter),
+                () -> Collections.unmodifiableMap(aggregate(aggregateField, filter)));
+    }
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .POST(HttpRequest.BodyPublishers.ofString(bodyJson))
-                    .header("Content-Type", "application/json")
-                    .build();
+    // Cheapest way to count the values of a field: the local index once it is loaded, unless it dropped one of the
+    // fields involved; otherwise Qdrant's facet API when the field has a payload index; otherwise, for large result
+    // sets, one count request per value when a sample shows few distinct values; otherwise a scroll over that single
+    // payload field. A fan-out whose counts do not add up to the total (values the sample missed) falls back to the
+    // scroll.
+    private Map<String, Integer> aggregate(String field, LogFilter filter) throws IOException, InterruptedException {
+        Map<String, Integer> indexed = aggregationIndex.isReady() ? aggregationIndex.groupBy(field, filter) : null;
+        if (indexed != null) {
+            return indexed;
+        }
 
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            JsonNode json = objectMapper.readTree(response.body());
-            JsonNode points = json.path("result").path("points");
-            for (JsonNode point : points) {
-                JsonNode payload = point.path("payload");
-                if (payload.has(aggregateField)) {
-                    allLogs.add(objectMapper.convertValue(payload, Map.class));
-                }
-            }
-            JsonNode nextPageOffset = json.path("result").path("next_page_offset");
-            if (!nextPageOffset.isNull()) {
-                offset = nextPageOffset.asInt();
-            } else {
-                hasMore = false;
+        long total = await(transport.count(collectionName, filter));
+        if (total == 0) return new HashMap<>();
+
+        if (facetEnabled && indexedPayloadFields().contains(field)) {
+            Map<String, Long> facet = await(transport.facet(collectionName, field, filter, facetLimit));
+            // Fewer hits than the limit means no value was cut off
+            if (facet.size() < facetLimit) {
+                LOGGER.debug("Aggregated {} over {} points with facet", field, total);
+                return toIntCounts(facet);
             }
         }
 
-        Map<String, Integer> aggregation = new HashMap<>();
-        for (Map<String, Object> log : allLogs) {
-            Object value = log.get(aggregateField);
-            if (value != null) {
-                aggregation.merge(value.toString(), 1, Integer::sum);
+        if (total > scrollBelowPoints && LogFilter.MATCH_FIELDS.contains(field)) {
+            Set<String> sample = sampleValues(field, filter);
+            if (sample.size() <= fanOutMaxValues) {
+                Map<String, Long> counts = countPerValue(field, sample, filter);
+                if (counts.values().stream().mapToLong(Long::longValue).sum() == total) {
+                    LOGGER.debug("Aggregated {} over {} points with {} counts", field, total, counts.size());
+                    return toIntCounts(counts);
+                }
             }
         }
+
+        // Qdrant has nothing cheaper for this field, so count client-side while scrolling
+        LOGGER.debug("Aggregated {} over {} points by scrolling", field, total);
+        Map<String, Integer> aggregation = new HashMap<>();
+        scrollFieldValues(field, filter.toQdrantFilter(), value -> aggregation.merge(value, 1, Integer::sum));
         return aggregation;
     }
 
+    // Distinct values on the first scroll page; point IDs are content hashes, so that page is a random sample
+    private Set<String> sampleValues(String field, LogFilter filter) throws IOException, InterruptedException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("with_payload", Map.of("include", List.of(field)));
+        body.put("with_vector", false);
+        body.put("limit", fanOutSamplePoints);
+        Map<String, Object> qdrantFilter = filter.toQdrantFilter();
+        if (!qdrantFilter.isEmpty()) body.put("filter", qdrantFilter);
+
+        Set<String> values = new HashSet<>();
+        ScrollPages.readFieldValues(objectMapper.getFactory(), scrollPage(body, null), field, values::add);
+        return values;
+    }
+
+    // At most aggregation.fanout.parallelism count requests are in flight at once
+    private Map<String, Long> countPerValue(String field, Collection<String> values, LogFilter filter)
+            throws IOException, InterruptedException {
+        Semaphore inFlight = new Semaphore(Math.max(1, fanOutParallelism));
+        Map<String, CompletableFuture<Long>> requests = new HashMap<>();
+        for (String value : values) {
+            inFlight.acquire();
+            CompletableFuture<Long> count = transport.count(collectionName, filter.with(field, value));
+            count.whenComplete((result, error) -> inFlight.release());
+            requests.put(value, count);
+        }
+
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<Long>> request : requests.entrySet()) {
+            long count = await(request.getValue());
+            if (count > 0) counts.put(request.getKey(), count);
+        }
+        return counts;
+    }
+
+    private static Map<String, Integer> toIntCounts(Map<String, Long> counts) {
+        Map<String, Integer> result = new HashMap<>();
+        counts.forEach((value, count) -> result.put(value, Math.toIntExact(count)));
+        return result;
+    }
+
+    // Payload fields with an index in the collection, which the facet API requires
+    private Set<String> indexedPayloadFields() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/collections/" + collectionName))
+                .GET()
+                .build();
+        HttpResponse<String> response = send("collections", request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) return Set.of();
+
+        Set<String> fields = new HashSet<>();
+        objectMapper.readTree(response.body()).path("result").path("payload_schema").fieldNames().forEachRemaining(fields::add);
+        return fields;
+    }
+
     @Tool(
             name = "Qdrant_Get_Distinct_Metadata_Values",
             description = "Get all unique values for a given metadata field in a Qdrant collection. Provide the collection name and the metadata field name."
@@ -579,43 +913,222 @@ public class QdrantClient {
     public Set<String> getDistinctMetadataValues(
             String fieldName
     ) throws IOException, InterruptedException {
+        Set<String> indexed = aggregationIndex.isReady() ? aggregationIndex.distinctValues(fieldName) : null;
+        if (indexed != null) {
+            return indexed;
+        }
+
         Set<String> values = new HashSet<>();
-        int offset = 0, limit = 10000;
-        boolean hasMore = true;
+        scrollFieldValues(fieldName, Map.of(), values::add);
+        return values;
+    }
 
-        while (hasMore) {
-            String url = qdrantUrl + "/collections/" + collectionName + "/points/scroll";
-            Map<String, Object> body = new HashMap<>();
-            body.put("with_payload", true);
-            body.put("with_vector", false);
-            body.put("limit", limit);
-            if (offset != 0) body.put("offset", offset);
+    @Tool(
+            name = "Qdrant_Rebuild_Aggregation_Index",
+            description = "Reload the in-memory aggregation index that answers aggregation and distinct value queries by scrolling the whole collection. Use this if aggregation results look out of date. Returns the number of indexed log entries."
+    )
+    public long rebuildAggregationIndex() throws IOException, InterruptedException {
+        aggregationIndex.beginRebuild();
+        boolean finished = false;
+        long rows = 0;
+        try {
+            JsonNode offset = null;
+            do {
+                Map<String, Object> body = new HashMap<>();
+                body.put("with_payload", LogAggregationIndex.FIELDS);
+                body.put("with_vector", false);
+                body.put("limit", scrollPageSize);
+                if (offset != null) body.put("offset", offset);
+
+                JsonNode result = scroll(body);
+                List<Long> ids = new ArrayList<>();
+                List<Map<String, String>> payloads = new ArrayList<>();
+                for (JsonNode point : result.path("points")) {
+                    Map<String, String> payload = new HashMap<>();
+                    point.path("payload").properties().forEach(field -> payload.put(field.getKey(), field.getValue().asText()));
+                    ids.add(point.path("id").asLong());
+                    payloads.add(payload);
+                }
+                aggregationIndex.addRebuildPage(ids, payloads);
+                rows += ids.size();
+                offset = nextPageOffset(result);
+            } while (offset != null);
+            aggregationIndex.finishRebuild();
+            queryCache.invalidate(collectionName);
+            finished = true;
+        } finally {
+            if (!finished) aggregationIndex.abortRebuild();
+        }
+        return rows;
+    }
 
-            String bodyJson = objectMapper.writeValueAsString(body);
+    // Collection the name is an alias of, or null if it is not an alias
+    public String aliasTarget(String name) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/aliases"))
+                .GET()
+                .build();
+        HttpResponse<String> response = send("aliases", request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Failed to list aliases: " + response.statusCode() + " - " + response.body());
+        }
+        for (JsonNode alias : objectMapper.readTree(response.body()).path("result").path("aliases")) {
+            if (name.equals(alias.path("alias_name").asText())) return alias.path("collection_name").asText();
+        }
+        return null;
+    }
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .POST(HttpRequest.BodyPublishers.ofString(bodyJson))
-                    .header("Content-Type", "application/json")
-                    .build();
+    // Until the alias is switched or mirroring stops, every upsert to the alias is also written to the target,
+    // with vectors fitted to its size, so a copy being made misses nothing ingested meanwhile
+    public void mirrorUpserts(String alias, String target, int dimensions) {
+        mirror = new UpsertMirror(alias, target, dimensions);
+    }
 
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            JsonNode json = objectMapper.readTree(response.body());
-            JsonNode points = json.path("result").path("points");
-            for (JsonNode point : points) {
-                JsonNode payload = point.path("payload");
-                if (payload.has(fieldName)) {
-                    values.add(payload.get(fieldName).asText());
-                }
-            }
-            JsonNode nextPageOffset = json.path("result").path("next_page_offset");
-            if (!nextPageOffset.isNull()) {
-                offset = nextPageOffset.asInt();
-            } else {
-                hasMore = false;
+    public void stopMirroring() {
+        mirror = null;
+    }
+
+    // Points the alias at the target collection in one request, which Qdrant applies atomically, so searches never
+    // see the name missing. Upserts wait meanwhile and are sized for the target afterwards; mirroring ends here.
+    // The previous collection is left alone.
+    public void switchAlias(String alias, String target, int dimensions) throws IOException, InterruptedException {
+        switchLock.writeLock().lock();
+        try {
+            updateAliases(List.of(
+                    Map.of("delete_alias", Map.of("alias_name", alias)),
+                    Map.of("create_alias", Map.of("collection_name", target, "alias_name", alias))));
+            vectorSizes.put(alias, dimensions);
+            mirror = null;
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+    }
+
+    private void updateAliases(List<Map<String, Object>> actions) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/collections/aliases"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(Map.of("actions", actions))))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = send("aliases", request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Failed to update aliases " + actions + ": " + response.statusCode() + " - " + response.body());
+        }
+    }
+
+    // One page of the collection's points with vectors and payloads, for copying or rewriting them; offset is null
+    // for the first page
+    public QdrantPointPage scrollPointsWithVectors(Long offset) throws IOException, InterruptedException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("with_payload", true);
+        body.put("with_vector", true);
+        body.put("limit", vectorScrollPageSize);
+        if (offset != null) body.put("offset", offset);
+
+        JsonNode result = scroll(body);
+        List<QdrantPoint> points = new ArrayList<>();
+        for (JsonNode stored : result.path("points")) {
+            QdrantPoint point = new QdrantPoint();
+            point.id = stored.path("id").asLong();
+            point.vector = objectMapper.convertValue(stored.path("vector"), float[].class);
+            point.payload = objectMapper.convertValue(stored.path("payload"), new TypeReference<>() {
+            });
+            points.add(point);
+        }
+        JsonNode next = nextPageOffset(result);
+        return new QdrantPointPage(points, next != null ? next.asLong() : null);
+    }
+
+    // Upserts copied points into another collection, with vectors fitted to its size
+    public void copyPoints(String target, List<QdrantPoint> points, int dimensions) throws IOException, InterruptedException {
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        upsertSplit(target, fitVectors(points, dimensions), parts);
+        await(CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)));
+    }
+
+    public void deletePoints(String collection, List<Long> pointIds) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/collections/" + collection + "/points/delete?wait=true"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(Map.of("points", pointIds))))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = send("delete", request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Failed to delete points: " + response.statusCode() + " - " + response.body());
+        }
+    }
+
+    // Single pass over the filtered collection that hands each point's value of one payload field to the consumer.
+    // Only that field is requested, every page is read with a streaming parser and dropped, and the next page is
+    // already being fetched while the current one is consumed, so memory depends on the consumer, not on the scroll.
+    private void scrollFieldValues(String field, Map<String, Object> filter, Consumer<String> consumer)
+            throws IOException, InterruptedException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("with_payload", Map.of("include", List.of(field)));
+        body.put("with_vector", false);
+        body.put("limit", scrollPageSize);
+        if (!filter.isEmpty()) body.put("filter", filter);
+
+        JsonFactory factory = objectMapper.getFactory();
+        try (ExecutorService prefetcher = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<byte[]> page = prefetcher.submit(() -> scrollPage(body, null));
+            while (page != null) {
+                byte[] bytes = await(page);
+                Object next = ScrollPages.nextPageOffset(factory, bytes);
+                page = next == null ? null : prefetcher.submit(() -> scrollPage(body, next));
+                ScrollPages.readFieldValues(factory, bytes, field, consumer);
             }
         }
-        return values;
+    }
+
+    private byte[] scrollPage(Map<String, Object> body, Object offset) throws IOException, InterruptedException {
+        Map<String, Object> pageBody = body;
+        if (offset != null) {
+            pageBody = new HashMap<>(body);
+            pageBody.put("offset", offset);
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/collections/" + collectionName + "/points/scroll"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(pageBody)))
+                .header("Content-Type", "application/json")
+                .build();
+
+        HttpResponse<byte[]> response = resilience.qdrant("scroll").execute(() ->
+                ResilienceRegistry.retryOnServerError(client.send(request, HttpResponse.BodyHandlers.ofByteArray())));
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Scroll failed with status " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return response.body();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof InterruptedException ie) throw ie;
+            throw new IOException("Qdrant request failed", e.getCause());
+        }
+    }
+
+    private JsonNode scroll(Map<String, Object> body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + "/collections/" + collectionName + "/points/scroll"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .header("Content-Type", "application/json")
+                .build();
+
+        HttpResponse<String> response = send("scroll", request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Scroll failed with status " + response.statusCode() + ": " + response.body());
+        }
+        return objectMapper.readTree(response.body()).path("result");
+    }
+
+    private static JsonNode nextPageOffset(JsonNode result) {
+        JsonNode next = result.path("next_page_offset");
+        return next.isMissingNode() || next.isNull() ? null : next;
     }
 
     @Tool(
@@ -638,15 +1151,36 @@ public class QdrantClient {
             String responseTime
     ) throws Exception {
 
-        // Aggregate data
-        Map<String, Integer> data = aggregateLogs(
-                yField, startTimestamp, endTimestamp, statusCode, ip, requestType, endpoint, size, referer, userAgent, responseTime
-        );
-
-        // Create dataset
         org.jfree.data.category.DefaultCategoryDataset dataset = new org.jfree.data.category.DefaultCategoryDataset();
-        for (Map.Entry<String, Integer> entry : data.entrySet()) {
-            dataset.addValue(entry.getValue(), yField, entry.getKey());
+        String seriesField = yField == null || "count".equalsIgnoreCase(yField) ? null : yField;
+        if ("timestamp".equalsIgnoreCase(xField)) {
+            // Counts per time bucket, with one series per yField value unless yField is just "count"
+            if (!aggregationIndex.isReady()) {
+                throw new IllegalStateException("Time charts need the aggregation index, which is still loading; try again shortly");
+            }
+            LogFilter filter = LogFilter.of(startTimestamp, endTimestamp, statusCode, ip, requestType, endpoint, size, referer, userAgent, responseTime);
+            LogAggregationIndex.TimeSeries series = aggregationIndex.timeSeries(filter, seriesField);
+            if (series == null) {
+                throw new IllegalArgumentException("The aggregation index does not hold '" + seriesField
+                        + "' or a filtered field (too many distinct values); chart it without a time axis");
+            }
+            Set<String> names = new TreeSet<>();
+            series.buckets().values().forEach(counts -> names.addAll(counts.keySet()));
+            for (Map.Entry<Long, Map<String, Integer>> bucket : series.buckets().entrySet()) {
+                String label = java.time.Instant.ofEpochMilli(bucket.getKey()).toString();
+                for (String name : names) {
+                    dataset.addValue(bucket.getValue().getOrDefault(name, 0), name, label);
+                }
+            }
+        } else {
+            // Categories along the x axis; yField chooses what is counted unless it is just "count"
+            String groupField = seriesField == null ? xField : seriesField;
+            Map<String, Integer> data = aggregateLogs(
+                    groupField, startTimestamp, endTimestamp, statusCode, ip, requestType, endpoint, size, referer, userAgent, responseTime
+            );
+            for (Map.Entry<String, Integer> entry : data.entrySet()) {
+                dataset.addValue(entry.getValue(), groupField, entry.getKey());
+            }
         }
 
         // Create chart
@@ -0,0 +1,258 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.qdrant.client.QdrantGrpcClient;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.hayden.ragloggingagent.models.LogFilter;
+import org.hayden.ragloggingagent.models.QdrantHit;
+import org.hayden.ragloggingagent.models.QdrantPage;
+import org.hayden.ragloggingagent.models.QdrantPoint;
+import org.hayden.ragloggingagent.resilience.ResilienceRegistry;
+import org.hayden.ragloggingagent.resilience.RetryableException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static io.qdrant.client.ConditionFactory.match;
+import static io.qdrant.client.ConditionFactory.matchKeyword;
+import static io.qdrant.client.ConditionFactory.range;
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.ValueFactory.nullValue;
+import static io.qdrant.client.ValueFactory.value;
+import static io.qdrant.client.VectorsFactory.vectors;
+import static io.qdrant.client.WithPayloadSelectorFactory.enable;
+
+// Protobuf over HTTP/2 on Qdrant's gRPC port. Vectors travel as packed floats instead of decimal text, which
+// is most of the request size for upserts and searches. The host and TLS setting come from qdrant.url.
+@Service
+@ConditionalOnProperty(name = "qdrant.transport", havingValue = "grpc")
+public class QdrantGrpcTransport implements QdrantTransport {
+
+    @Autowired
+    private ResilienceRegistry resilience;
+
+    @Value("${qdrant.url}")
+    private String qdrantUrl;
+
+    @Value("${qdrant.grpc.port:6334}")
+    private int grpcPort;
+
+    @Value("${qdrant.request.timeout.seconds:60}")
+    private long requestTimeoutSeconds;
+
+    private QdrantGrpcClient client;
+
+    @PostConstruct
+    public void init() {
+        URI uri = URI.create(qdrantUrl);
+        // The channel connects lazily, and the version check would make startup depend on Qdrant being up
+        client = QdrantGrpcClient.newBuilder(uri.getHost(), grpcPort, "https".equalsIgnoreCase(uri.getScheme()), false)
+                .withTimeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        client.close();
+    }
+
+    @Override
+    public CompletableFuture<Void> upsert(String collection, List<QdrantPoint> points, boolean wait) {
+        Points.UpsertPoints.Builder request = Points.UpsertPoints.newBuilder()
+                .setCollectionName(collection)
+                .setWait(wait);
+        for (QdrantPoint point : points) {
+            request.addPoints(Points.PointStruct.newBuilder()
+                    .setId(id(point.id))
+                    .setVectors(vectors(point.vector))
+                    .putAllPayload(toValues(point.payload)));
+        }
+        Points.UpsertPoints built = request.build();
+        return call("upsert", () -> client.points().upsert(built)).thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<List<QdrantHit>> search(String collection, float[] vector, int limit, LogFilter filter) {
+        Points.SearchPoints.Builder request = Points.SearchPoints.newBuilder()
+                .setCollectionName(collection)
+                .setLimit(limit)
+                .setWithPayload(enable(true))
+                .setParams(Points.SearchParams.newBuilder().setHnswEf(64));
+        for (float component : vector) {
+            request.addVector(component);
+        }
+        if (filter != null) request.setFilter(toFilter(filter));
+        Points.SearchPoints built = request.build();
+        return call("search", () -> client.points().search(built)).thenApply(response -> {
+            List<QdrantHit> hits = new ArrayList<>(response.getResultCount());
+            for (Points.ScoredPoint point : response.getResultList()) {
+                hits.add(new QdrantHit(point.getId().getNum(), point.getScore(), fromValues(point.getPayloadMap())));
+            }
+            return hits;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> count(String collection, LogFilter filter) {
+        Points.CountPoints.Builder request = Points.CountPoints.newBuilder()
+                .setCollectionName(collection)
+                .setExact(true);
+        if (filter != null) request.setFilter(toFilter(filter));
+        Points.CountPoints built = request.build();
+        return call("count", () -> client.points().count(built)).thenApply(response -> response.getResult().getCount());
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Long>> facet(String collection, String field, LogFilter filter, int limit) {
+        Points.FacetCounts.Builder request = Points.FacetCounts.newBuilder()
+                .setCollectionName(collection)
+                .setKey(field)
+                .setLimit(limit)
+                .setExact(true);
+        if (filter != null) request.setFilter(toFilter(filter));
+        Points.FacetCounts built = request.build();
+        return call("facet", () -> client.points().facet(built)).thenApply(response -> {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (Points.FacetHit hit : response.getHitsList()) {
+                Points.FacetValue value = hit.getValue();
+                String key = switch (value.getVariantCase()) {
+                    case INTEGER_VALUE -> String.valueOf(value.getIntegerValue());
+                    case BOOL_VALUE -> String.valueOf(value.getBoolValue());
+                    default -> value.getStringValue();
+                };
+                counts.put(key, hit.getCount());
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public CompletableFuture<QdrantPage> scroll(String collection, LogFilter filter, Long offset, int limit) {
+        Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                .setCollectionName(collection)
+                .setLimit(limit)
+                .setWithPayload(enable(true));
+        if (offset != null) request.setOffset(id(offset));
+        if (filter != null) request.setFilter(toFilter(filter));
+        Points.ScrollPoints built = request.build();
+        return call("scroll", () -> client.points().scroll(built)).thenApply(response -> {
+            List<QdrantHit> hits = new ArrayList<>(response.getResultCount());
+            for (Points.RetrievedPoint point : response.getResultList()) {
+                hits.add(new QdrantHit(point.getId().getNum(), 0f, fromValues(point.getPayloadMap())));
+            }
+            return new QdrantPage(hits, response.hasNextPageOffset() ? response.getNextPageOffset().getNum() : null);
+        });
+    }
+
+    // Same conditions as LogFilter.toQdrantFilter
+    static Points.Filter toFilter(LogFilter filter) {
+        Points.Filter.Builder builder = Points.Filter.newBuilder();
+        if (filter.hasTimeRange()) {
+            builder.addMust(range("timestamp_ms", Points.Range.newBuilder()
+                    .setGte(filter.startMillis())
+                    .setLte(filter.endMillis())
+                    .build()));
+        }
+        filter.matches().forEach((key, value) -> {
+            if (!LogFilter.INTEGER_FIELDS.contains(key)) {
+                builder.addMust(matchKeyword(key, value));
+                return;
+            }
+            LogFilter.Bounds bounds = LogFilter.bounds(key, value);
+            if (bounds.isExact()) {
+                builder.addMust(match(key, bounds.gte()));
+            } else {
+                Points.Range.Builder range = Points.Range.newBuilder();
+                if (bounds.gte() != null) range.setGte(bounds.gte());
+                if (bounds.lte() != null) range.setLte(bounds.lte());
+                builder.addMust(range(key, range.build()));
+            }
+        });
+        return builder.build();
+    }
+
+    static Map<String, JsonWithInt.Value> toValues(Map<String, Object> payload) {
+        Map<String, JsonWithInt.Value> values = new HashMap<>();
+        if (payload != null) payload.forEach((key, field) -> values.put(key, toValue(field)));
+        return values;
+    }
+
+    private static JsonWithInt.Value toValue(Object field) {
+        if (field == null) return nullValue();
+        if (field instanceof String text) return value(text);
+        if (field instanceof Integer || field instanceof Long) return value(((Number) field).longValue());
+        if (field instanceof Number number) return value(number.doubleValue());
+        if (field instanceof Boolean flag) return value(flag);
+        return value(field.toString());
+    }
+
+    static Map<String, Object> fromValues(Map<String, JsonWithInt.Value> values) {
+        Map<String, Object> payload = new HashMap<>();
+        values.forEach((key, field) -> payload.put(key, fromValue(field)));
+        return payload;
+    }
+
+    private static Object fromValue(JsonWithInt.Value field) {
+        return switch (field.getKindCase()) {
+            case STRING_VALUE -> field.getStringValue();
+            case INTEGER_VALUE -> field.getIntegerValue();
+            case DOUBLE_VALUE -> field.getDoubleValue();
+            case BOOL_VALUE -> field.getBoolValue();
+            case LIST_VALUE -> field.getListValue().getValuesList().stream().map(QdrantGrpcTransport::fromValue).toList();
+            case STRUCT_VALUE -> fromValues(field.getStructValue().getFieldsMap());
+            default -> null;
+        };
+    }
+
+    // Unavailable, throttled and timed-out calls are retried like the REST client's 429/5xx responses;
+    // other statuses are the caller's error and fail at once
+    private <T> CompletableFuture<T> call(String endpoint, Supplier<ListenableFuture<T>> request) {
+        return resilience.qdrant(endpoint).executeAsync(() -> {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            Futures.addCallback(request.get(), new FutureCallback<>() {
+                @Override
+                public void onSuccess(T result) {
+                    future.complete(result);
+                }
+
+                @Override
+                public void onFailure(Throwable error) {
+                    future.completeExceptionally(retryable(error));
+                }
+            }, MoreExecutors.directExecutor());
+            return future;
+        });
+    }
+
+    private static Throwable retryable(Throwable error) {
+        if (!(error instanceof StatusRuntimeException status)) return error;
+        int equivalentHttpStatus = switch (status.getStatus().getCode()) {
+            case RESOURCE_EXHAUSTED -> 429;
+            case UNAVAILABLE -> 503;
+            case DEADLINE_EXCEEDED, ABORTED, INTERNAL -> 500;
+            default -> -1;
+        };
+        if (equivalentHttpStatus < 0) return error;
+        Status.Code code = status.getStatus().getCode();
+        return new RetryableException("gRPC " + code + ": " + status.getStatus().getDescription(), equivalentHttpStatus, 0, error);
+    }
+}
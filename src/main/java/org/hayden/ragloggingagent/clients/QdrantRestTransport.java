@@ -0,0 +1,162 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hayden.ragloggingagent.models.LogFilter;
+import org.hayden.ragloggingagent.models.QdrantHit;
+import org.hayden.ragloggingagent.models.QdrantPage;
+import org.hayden.ragloggingagent.models.QdrantPoint;
+import org.hayden.ragloggingagent.resilience.ResilienceRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// JSON over HTTP on Qdrant's REST port, built on sendAsync so no thread waits while a request is in flight
+@Service
+@ConditionalOnProperty(name = "qdrant.transport", havingValue = "rest", matchIfMissing = true)
+public class QdrantRestTransport implements QdrantTransport {
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD = new TypeReference<>() {
+    };
+
+    @Autowired
+    private HttpClient client;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ResilienceRegistry resilience;
+
+    @Value("${qdrant.url}")
+    private String qdrantUrl;
+
+    @Value("${qdrant.request.timeout.seconds:60}")
+    private long requestTimeoutSeconds;
+
+    @Value("${qdrant.upsert.gzip:false}")
+    private boolean gzipUpserts;
+
+    @Override
+    public CompletableFuture<Void> upsert(String collection, List<QdrantPoint> points, boolean wait) {
+        // Streamed point by point into the request instead of serialized up front
+        HttpRequest.Builder request = request("/collections/" + collection + "/points?wait=" + wait)
+                .PUT(StreamingJsonBody.publisher(objectMapper, "points", points, gzipUpserts));
+        if (gzipUpserts) request.header("Content-Encoding", "gzip");
+        return send("upsert", request.build()).thenApply(result -> null);
+    }
+
+    @Override
+    public CompletableFuture<List<QdrantHit>> search(String collection, float[] vector, int limit, LogFilter filter) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("vector", vector);
+        body.put("limit", limit);
+        body.put("with_payload", true);
+        body.put("params", Map.of("ef", 64));
+        if (filter != null) body.put("filter", filter.toQdrantFilter());
+        return send("search", "POST", "/collections/" + collection + "/points/search", body).thenApply(this::hits);
+    }
+
+    @Override
+    public CompletableFuture<Long> count(String collection, LogFilter filter) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("exact", true);
+        if (filter != null) body.put("filter", filter.toQdrantFilter());
+        return send("count", "POST", "/collections/" + collection + "/points/count", body)
+                .thenApply(result -> result.path("count").asLong());
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Long>> facet(String collection, String field, LogFilter filter, int limit) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("key", field);
+        body.put("limit", limit);
+        body.put("exact", true);
+        if (filter != null) body.put("filter", filter.toQdrantFilter());
+        return send("facet", "POST", "/collections/" + collection + "/facet", body).thenApply(result -> {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (JsonNode hit : result.path("hits")) {
+                counts.put(hit.path("value").asText(), hit.path("count").asLong());
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public CompletableFuture<QdrantPage> scroll(String collection, LogFilter filter, Long offset, int limit) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("with_payload", true);
+        body.put("with_vector", false);
+        body.put("limit", limit);
+        if (offset != null) body.put("offset", offset);
+        if (filter != null) body.put("filter", filter.toQdrantFilter());
+        return send("scroll", "POST", "/collections/" + collection + "/points/scroll", body).thenApply(result -> {
+            JsonNode next = result.path("next_page_offset");
+            return new QdrantPage(hits(result.path("points")), next.isIntegralNumber() ? next.asLong() : null);
+        });
+    }
+
+    private List<QdrantHit> hits(JsonNode points) {
+        List<QdrantHit> hits = new ArrayList<>(points.size());
+        for (JsonNode point : points) {
+            hits.add(new QdrantHit(point.path("id").asLong(), (float) point.path("score").asDouble(),
+                    objectMapper.convertValue(point.path("payload"), PAYLOAD)));
+        }
+        return hits;
+    }
+
+    private CompletableFuture<JsonNode> send(String endpoint, String method, String path, Object body) {
+        try {
+            return send(endpoint, request(path)
+                    .method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build());
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(qdrantUrl + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(requestTimeoutSeconds));
+    }
+
+    private CompletableFuture<JsonNode> send(String endpoint, HttpRequest request) {
+        return resilience.qdrant(endpoint).executeAsync(() -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                        .thenCompose(response -> {
+                            try {
+                                return CompletableFuture.completedFuture(ResilienceRegistry.retryOnServerError(response));
+                            } catch (IOException e) {
+                                return CompletableFuture.failedFuture(e);
+                            }
+                        }))
+                .thenCompose(response -> {
+                    try {
+                        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                            throw new IOException("Qdrant " + endpoint + " failed with status " + response.statusCode()
+                                    + ": " + response.body());
+                        }
+                        return CompletableFuture.completedFuture(objectMapper.readTree(response.body()).path("result"));
+                    } catch (IOException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                });
+    }
+}
@@ -0,0 +1,29 @@
+package org.hayden.ragloggingagent.clients;
+
+import org.hayden.ragloggingagent.models.LogFilter;
+import org.hayden.ragloggingagent.models.QdrantHit;
+import org.hayden.ragloggingagent.models.QdrantPage;
+import org.hayden.ragloggingagent.models.QdrantPoint;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Wire protocol for the data-path calls, selected with qdrant.transport: "rest" sends JSON over HTTP, "grpc"
+// sends protobuf over HTTP/2. Calls never block; they go through the resilience layer and fail with an
+// IOException once retries are exhausted. Filters may be null.
+public interface QdrantTransport {
+
+    // With wait false Qdrant acknowledges once the points are queued, before they are applied
+    CompletableFuture<Void> upsert(String collection, List<QdrantPoint> points, boolean wait);
+
+    CompletableFuture<List<QdrantHit>> search(String collection, float[] vector, int limit, LogFilter filter);
+
+    CompletableFuture<Long> count(String collection, LogFilter filter);
+
+    // Number of points per value of a payload field, largest first; needs a payload index on the field
+    CompletableFuture<Map<String, Long>> facet(String collection, String field, LogFilter filter, int limit);
+
+    // Points with their payloads, without vectors, in ID order starting at offset (null for the beginning)
+    CompletableFuture<QdrantPage> scroll(String collection, LogFilter filter, Long offset, int limit);
+}
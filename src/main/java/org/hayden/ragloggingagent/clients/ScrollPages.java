@@ -0,0 +1,87 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+// Streaming readers for raw Qdrant scroll responses. Neither builds a tree: the offset scan skips the points
+// array wholesale, and the value reader only materializes the one payload field it was asked for.
+final class ScrollPages {
+
+    private ScrollPages() {
+    }
+
+    // result.next_page_offset as a Long or String, or null on the last page
+    static Object nextPageOffset(JsonFactory factory, byte[] page) throws IOException {
+        try (JsonParser parser = factory.createParser(page)) {
+            if (!enterField(parser, "result")) return null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!"next_page_offset".equals(name)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                return switch (value) {
+                    case VALUE_NUMBER_INT -> parser.getLongValue();
+                    case VALUE_STRING -> parser.getText();
+                    default -> null;
+                };
+            }
+            return null;
+        }
+    }
+
+    // Calls consumer with the text of payload[field] for every point on the page that has it
+    static int readFieldValues(JsonFactory factory, byte[] page, String field, Consumer<String> consumer) throws IOException {
+        int points = 0;
+        try (JsonParser parser = factory.createParser(page)) {
+            if (!enterField(parser, "result")) return 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY || !"points".equals(name)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    points++;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String pointField = parser.currentName();
+                        if (parser.nextToken() != JsonToken.START_OBJECT || !"payload".equals(pointField)) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String payloadField = parser.currentName();
+                            JsonToken value = parser.nextToken();
+                            if (field.equals(payloadField) && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                                consumer.accept(parser.getValueAsString());
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return points;
+    }
+
+    // Advances into the object value of a top-level field
+    private static boolean enterField(JsonParser parser, String field) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Scroll response is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && field.equals(name)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpRequest;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// Request body of the form {"<field>": [items...]} that is serialized only as the HTTP client reads it. Items
+// are written with a Jackson generator into one reused chunk buffer, optionally through gzip, so a batch never
+// exists as a whole String or byte[]: memory is about one chunk plus one item's JSON, whatever the batch size.
+final class StreamingJsonBody extends InputStream {
+
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    // Exposes its array so chunks are read in place instead of copied out with toByteArray
+    private static final class ChunkBuffer extends ByteArrayOutputStream {
+        ChunkBuffer() {
+            super(2 * CHUNK_BYTES);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private final Iterator<?> items;
+    private final ChunkBuffer chunk = new ChunkBuffer();
+    private final JsonGenerator generator;
+    private int position;
+    private boolean finished;
+
+    StreamingJsonBody(ObjectMapper objectMapper, String field, List<?> items, boolean gzip) throws IOException {
+        this.items = items.iterator();
+        OutputStream target = gzip ? new GZIPOutputStream(chunk, 8192) : chunk;
+        generator = objectMapper.getFactory().createGenerator(target);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart(field);
+    }
+
+    // A fresh body per send, since retries re-read it from the start
+    static HttpRequest.BodyPublisher publisher(ObjectMapper objectMapper, String field, List<?> items, boolean gzip) {
+        return HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return new StreamingJsonBody(objectMapper, field, items, gzip);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not start request body", e);
+            }
+        });
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        while (position == chunk.size()) {
+            if (finished) return -1;
+            fill();
+        }
+        int count = Math.min(length, chunk.size() - position);
+        System.arraycopy(chunk.array(), position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    // Capacity of the chunk buffer, i.e. the most body bytes held at once
+    int bufferCapacity() {
+        return chunk.array().length;
+    }
+
+    private void fill() throws IOException {
+        chunk.reset();
+        position = 0;
+        while (chunk.size() < CHUNK_BYTES && items.hasNext()) {
+            generator.writeObject(items.next());
+            generator.flush();
+        }
+        if (!items.hasNext() && chunk.size() < CHUNK_BYTES) {
+            generator.writeEndArray();
+            generator.writeEndObject();
+            // Also finishes the gzip stream, writing its trailer into the chunk
+            generator.close();
+            finished = true;
+        }
+    }
+}
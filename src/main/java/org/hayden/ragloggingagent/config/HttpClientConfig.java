@@ -1,14 +1,30 @@
 package org.hayden.ragloggingagent.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class HttpClientConfig {
 
+    @Value("${http.client.connect.timeout.ms:5000}")
+    private long connectTimeoutMillis;
+
+    // HTTP_2 falls back to HTTP/1.1 per connection when the server does not speak it
+    @Value("${http.client.version:HTTP_2}")
+    private HttpClient.Version version;
+
     @Bean
     public HttpClient httpClient() {
-        return HttpClient.newBuilder().build();
+        // Async responses complete on virtual threads, so many requests can be in flight without
+        // holding a platform thread each
+        return HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .version(version)
+                .build();
     }
-}
\ No newline at end of file
+}
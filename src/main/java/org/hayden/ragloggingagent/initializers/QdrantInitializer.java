@@ -1,8 +1,11 @@
 package org.hayden.ragloggingagent.initializers;
 
+import org.hayden.ragloggingagent.clients.OpenAIClient;
 import org.hayden.ragloggingagent.clients.QdrantClient;
-import org.hayden.ragloggingagent.services.EmbeddingService;
+import org.hayden.ragloggingagent.services.LogAggregationIndex;
+import org.hayden.ragloggingagent.services.LogIngestionService;
 import org.hayden.ragloggingagent.services.LogParserService;
+import org.hayden.ragloggingagent.services.LogTailService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.tool.annotation.Tool;
@@ -12,6 +15,7 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -24,19 +28,28 @@ public class QdrantInitializer {
     private QdrantClient qdrantClient;
 
     @Autowired
-    private EmbeddingService embeddingService;
+    private OpenAIClient openAIClient;
+
+    @Autowired
+    private LogIngestionService logIngestionService;
 
     @Autowired
     private LogParserService logParserService;
 
+    @Autowired
+    private LogTailService logTailService;
+
+    @Autowired
+    private LogAggregationIndex aggregationIndex;
+
     @Value("${qdrant.collection.name}")
     private String collectionName;
 
     @Value("${qdrant.insert.log.messages:false}")
     private boolean insertLogMessages;
 
-    @Value("${qdrant.processing.chunk.size:1000}")
-    private int processingChunkSize;
+    @Value("${qdrant.bulk.load.enabled:false}")
+    private boolean bulkLoad;
 
 
 
@@ -45,22 +58,65 @@ public class QdrantInitializer {
         try {
             if (!qdrantClient.collectionExists(collectionName)) {
                 LOGGER.info("Qdrant collection '{}' does not exist. Creating...", collectionName);
-                qdrantClient.createCollection(collectionName);
+                qdrantClient.createAliasedCollection(collectionName);
                 LOGGER.info("Qdrant collection '{}' created.", collectionName);
             } else {
                 LOGGER.info("Qdrant collection '{}' already exists.", collectionName);
+                if (qdrantClient.aliasTarget(collectionName) == null) {
+                    LOGGER.info("'{}' is a plain collection rather than an alias; dimension migrations need it behind an alias "
+                            + "with another name", collectionName);
+                }
+                qdrantClient.createPayloadIndexes(collectionName);
+                // Embed at the size the collection holds, which after a migration may differ from the configuration
+                int vectorSize = qdrantClient.vectorSize(collectionName);
+                if (vectorSize > 0 && vectorSize != openAIClient.getDimensions()) {
+                    LOGGER.warn("Collection '{}' holds {}-dimension vectors; embedding at that size instead of the configured {}",
+                            collectionName, vectorSize, openAIClient.getDimensions());
+                    openAIClient.setDimensions(vectorSize);
+                }
+            }
+            qdrantClient.restoreIndexing();
+
+            // Loads in the background; aggregation tools scroll Qdrant until it is ready, and points
+            // ingested in the meantime are merged in when the scroll finishes
+            if (aggregationIndex.isEnabled()) {
+                Thread.ofVirtual().name("aggregation-index-rebuild").start(() -> {
+                    try {
+                        qdrantClient.rebuildAggregationIndex();
+                    } catch (Exception e) {
+                        LOGGER.error("Failed to build the aggregation index: {}", e.getMessage());
+                    }
+                });
             }
 
             if (insertLogMessages) {
-                List<String> allLogLines = logParserService.readAllLogLines();
-                for (int i = 0; i < allLogLines.size(); i += processingChunkSize) {
-                    List<String> chunk = allLogLines.subList(i, Math.min(i + processingChunkSize, allLogLines.size()));
-                    embeddingService.processAndPublishLog(chunk, collectionName);
+                Path logFile = logParserService.resolveLogFile();
+                LogTailService.Offset loadedEnd = logTailService.isEnabled() && logFile != null
+                        ? logTailService.currentEnd(logFile) : null;
+                long logLineCount;
+                if (bulkLoad) {
+                    qdrantClient.beginBulkLoad(collectionName);
+                    try {
+                        logLineCount = logIngestionService.ingest(collectionName);
+                    } finally {
+                        // Restores indexing even if the load failed, and only then declares the collection ready
+                        qdrantClient.endBulkLoad(collectionName);
+                    }
+                } else {
+                    logLineCount = logIngestionService.ingest(collectionName);
                 }
-                LOGGER.info("Qdrant Initializer completed. {} log messages inserted into collection '{}'.", allLogLines.size(), collectionName);
+                if (logFile != null) {
+                    logTailService.recordLoaded(logFile, loadedEnd);
+                }
+                LOGGER.info("Qdrant Initializer completed. {} log messages inserted into collection '{}'.", logLineCount, collectionName);
             } else {
                 LOGGER.info("Log message insertion is disabled by configuration.");
             }
+
+            // Follow mode picks up where the one-shot load (or the previous run) left off
+            if (logTailService.isEnabled()) {
+                logTailService.start(collectionName);
+            }
         } catch (Exception e) {
             LOGGER.error("Failed to initialize Qdrant collection: {}", e.getMessage());
         }
@@ -0,0 +1,32 @@
+package org.hayden.ragloggingagent.models;
+
+import java.util.List;
+
+// Unit of work handed between ingestion pipeline stages; each stage fills in the next field
+public class LogBatch {
+    public String collection;
+    public List<String> lines;
+    public List<String> validLines;
+    public List<LogRecord> records;
+    public List<Long> ids;
+    public List<float[]> vectors;
+    public List<QdrantPoint> points;
+
+    public LogBatch(String collection, List<String> lines) {
+        this.collection = collection;
+        this.lines = lines;
+    }
+
+    // Batch whose lines were already parsed upstream, e.g. by the parallel file parser
+    public static LogBatch ofRecords(String collection, List<LogRecord> records) {
+        LogBatch batch = new LogBatch(collection, null);
+        batch.records = records;
+        return batch;
+    }
+
+    public int size() {
+        if (points != null) return points.size();
+        if (validLines != null) return validLines.size();
+        return lines != null ? lines.size() : records.size();
+    }
+}
@@ -0,0 +1,155 @@
+package org.hayden.ragloggingagent.models;
+
+import org.hayden.ragloggingagent.utils.DateFormatUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// The metadata filter accepted by the search, count and aggregation tools. Null fields are not filtered on;
+// the time range only applies when both ends are given. Timestamps are held in the log format. Conditions on
+// the integer fields may be a range such as 500-599, 1000- or -99 instead of a single number.
+public record LogFilter(
+        String startTimestamp,
+        String endTimestamp,
+        String status,
+        String ip,
+        String requestType,
+        String endpoint,
+        String size,
+        String referer,
+        String userAgent,
+        String responseTime
+) {
+
+    // Payload fields that can carry an equality condition
+    public static final List<String> MATCH_FIELDS = List.of(
+            "status", "ip", "request_type", "endpoint", "size", "referer", "user_agent", "response_time");
+
+    // Payload fields stored as integers, matched and range-filtered as numbers
+    public static final Set<String> INTEGER_FIELDS = Set.of("status", "size", "response_time");
+
+    // Inclusive bounds of a condition on an integer field; null for an open end
+    public record Bounds(Long gte, Long lte) {
+        public boolean isExact() {
+            return gte != null && gte.equals(lte);
+        }
+
+        public boolean contains(String value) {
+            try {
+                long number = Long.parseLong(value);
+                return (gte == null || number >= gte) && (lte == null || number <= lte);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        public Map<String, Object> toQdrantRange() {
+            Map<String, Object> range = new HashMap<>();
+            if (gte != null) range.put("gte", gte);
+            if (lte != null) range.put("lte", lte);
+            return range;
+        }
+    }
+
+    public static LogFilter of(String startTimestamp, String endTimestamp, String status, String ip, String requestType,
+                               String endpoint, String size, String referer, String userAgent, String responseTime) {
+        LogFilter filter = new LogFilter(toLogFormat(startTimestamp), toLogFormat(endTimestamp), status, ip, requestType,
+                endpoint, size, referer, userAgent, responseTime);
+        // Rejects malformed numbers up front instead of silently matching nothing
+        filter.matches().forEach((field, value) -> {
+            if (INTEGER_FIELDS.contains(field)) bounds(field, value);
+        });
+        return filter;
+    }
+
+    public static Bounds bounds(String field, String value) {
+        String condition = value.strip();
+        int dash = condition.indexOf('-');
+        try {
+            if (dash < 0) {
+                long exact = Long.parseLong(condition);
+                return new Bounds(exact, exact);
+            }
+            String low = condition.substring(0, dash).strip();
+            String high = condition.substring(dash + 1).strip();
+            if (low.isEmpty() && high.isEmpty()) throw new NumberFormatException(condition);
+            return new Bounds(low.isEmpty() ? null : Long.valueOf(low), high.isEmpty() ? null : Long.valueOf(high));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Filter on '" + field + "' must be a number or a range like 500-599, got '" + value + "'");
+        }
+    }
+
+    private static String toLogFormat(String timestamp) {
+        return timestamp == null ? null : DateFormatUtil.toLogFormat(DateFormatUtil.toIso8601(timestamp));
+    }
+
+    public boolean hasTimeRange() {
+        return startTimestamp != null && endTimestamp != null;
+    }
+
+    public long startMillis() {
+        return DateFormatUtil.toEpochMillis(startTimestamp);
+    }
+
+    public long endMillis() {
+        return DateFormatUtil.toEpochMillis(endTimestamp);
+    }
+
+    // Copy with the equality condition on one payload field set to value, replacing any existing one
+    public LogFilter with(String field, String value) {
+        return switch (field) {
+            case "status" -> new LogFilter(startTimestamp, endTimestamp, value, ip, requestType, endpoint, size, referer, userAgent, responseTime);
+            case "ip" -> new LogFilter(startTimestamp, endTimestamp, status, value, requestType, endpoint, size, referer, userAgent, responseTime);
+            case "request_type" -> new LogFilter(startTimestamp, endTimestamp, status, ip, value, endpoint, size, referer, userAgent, responseTime);
+            case "endpoint" -> new LogFilter(startTimestamp, endTimestamp, status, ip, requestType, value, size, referer, userAgent, responseTime);
+            case "size" -> new LogFilter(startTimestamp, endTimestamp, status, ip, requestType, endpoint, value, referer, userAgent, responseTime);
+            case "referer" -> new LogFilter(startTimestamp, endTimestamp, status, ip, requestType, endpoint, size, value, userAgent, responseTime);
+            case "user_agent" -> new LogFilter(startTimestamp, endTimestamp, status, ip, requestType, endpoint, size, referer, value, responseTime);
+            case "response_time" -> new LogFilter(startTimestamp, endTimestamp, status, ip, requestType, endpoint, size, referer, userAgent, value);
+            default -> throw new IllegalArgumentException("Cannot filter on field '" + field + "'; expected one of " + MATCH_FIELDS);
+        };
+    }
+
+    // Payload field to required value, for every equality condition that is set
+    public Map<String, String> matches() {
+        Map<String, String> matches = new LinkedHashMap<>();
+        if (status != null) matches.put("status", status);
+        if (ip != null) matches.put("ip", ip);
+        if (requestType != null) matches.put("request_type", requestType);
+        if (endpoint != null) matches.put("endpoint", endpoint);
+        if (size != null) matches.put("size", size);
+        if (referer != null) matches.put("referer", referer);
+        if (userAgent != null) matches.put("user_agent", userAgent);
+        if (responseTime != null) matches.put("response_time", responseTime);
+        return matches;
+    }
+
+    // Qdrant filter object; empty when no condition is set
+    public Map<String, Object> toQdrantFilter() {
+        List<Map<String, Object>> must = new ArrayList<>();
+        if (hasTimeRange()) {
+            // The text timestamp would only compare lexicographically, so filter on the numeric copy
+            must.add(Map.of("key", "timestamp_ms", "range", Map.of("gte", startMillis(), "lte", endMillis())));
+        }
+        matches().forEach((key, value) -> {
+            if (!INTEGER_FIELDS.contains(key)) {
+                must.add(Map.of("key", key, "match", Map.of("value", value)));
+                return;
+            }
+            Bounds bounds = bounds(key, value);
+            must.add(bounds.isExact()
+                    ? Map.of("key", key, "match", Map.of("value", bounds.gte()))
+                    : Map.of("key", key, "range", bounds.toQdrantRange()));
+        });
+
+        Map<String, Object> filter = new HashMap<>();
+        if (!must.isEmpty()) {
+            filter.put("must", must);
+        }
+        return filter;
+    }
+}
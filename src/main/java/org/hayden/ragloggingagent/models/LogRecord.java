@@ -0,0 +1,41 @@
+package org.hayden.ragloggingagent.models;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// One parsed access log line. timestampMillis is epoch millis, or Long.MIN_VALUE when the timestamp
+// text could not be interpreted.
+public record LogRecord(
+        String ip,
+        String timestamp,
+        long timestampMillis,
+        String method,
+        String endpoint,
+        int status,
+        long size,
+        String referer,
+        String userAgent,
+        int responseTime,
+        String raw
+) {
+
+    // Payload stored with the point in Qdrant; numbers are stored as numbers so they can be indexed and range-filtered
+    public Map<String, Object> toPayload() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("ip", ip);
+        metadata.put("timestamp", timestamp);
+        // Numeric copy of the timestamp so Qdrant can range-filter on it
+        if (timestampMillis != Long.MIN_VALUE) {
+            metadata.put("timestamp_ms", timestampMillis);
+        }
+        metadata.put("request_type", method);
+        metadata.put("endpoint", endpoint);
+        metadata.put("status", status);
+        metadata.put("size", size);
+        metadata.put("referer", referer);
+        metadata.put("user_agent", userAgent);
+        metadata.put("response_time", responseTime);
+        metadata.put("raw", raw);
+        return metadata;
+    }
+}
@@ -0,0 +1,7 @@
+package org.hayden.ragloggingagent.models;
+
+import java.util.Map;
+
+// A point as returned by search or scroll, whichever transport fetched it; score is 0 for scrolled points
+public record QdrantHit(long id, float score, Map<String, Object> payload) {
+}
@@ -0,0 +1,7 @@
+package org.hayden.ragloggingagent.models;
+
+import java.util.List;
+
+// One scroll page; nextOffset is null on the last page
+public record QdrantPage(List<QdrantHit> points, Long nextOffset) {
+}
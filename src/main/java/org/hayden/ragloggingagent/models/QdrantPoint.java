@@ -3,7 +3,7 @@ package org.hayden.ragloggingagent.models;
 import java.util.Map;
 
 public class QdrantPoint {
-    public int id;
-    public double[] vector;
+    public long id;
+    public float[] vector;
     public Map<String, Object> payload;
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package org.hayden.ragloggingagent.models;
+
+import java.util.List;
+
+// One scroll page of stored points with their vectors; nextOffset is null on the last page
+public record QdrantPointPage(List<QdrantPoint> points, Long nextOffset) {
+}
@@ -0,0 +1,12 @@
+package org.hayden.ragloggingagent.resilience;
+
+import java.io.IOException;
+
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String endpoint) {
+        super("Circuit breaker open for endpoint '" + endpoint + "'");
+    }
+}
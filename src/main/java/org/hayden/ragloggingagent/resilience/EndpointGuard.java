@@ -0,0 +1,206 @@
+package org.hayden.ragloggingagent.resilience;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Rate limiting, retries and circuit breaking for one remote endpoint. The request rate adapts with
+// AIMD: it grows additively after successes and is halved whenever the server throttles us.
+public class EndpointGuard {
+
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T run() throws IOException, InterruptedException;
+    }
+
+    @FunctionalInterface
+    public interface AsyncAttempt<T> {
+        CompletableFuture<T> run();
+    }
+
+    private final String name;
+    private final TokenBucket bucket;
+    private final CircuitBreaker circuitBreaker;
+    private final double maxRate;
+    private final double minRate;
+    private final double additiveIncrease;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitedMillis = new AtomicLong();
+
+    public EndpointGuard(String name, double maxRate, double minRate, double additiveIncrease, int maxAttempts,
+                         long initialBackoffMillis, long maxBackoffMillis, int failureThreshold, long openMillis) {
+        this.name = name;
+        // One second worth of burst at the configured rate
+        this.bucket = new TokenBucket(Math.max(1, maxRate), maxRate);
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, TimeUnit.MILLISECONDS.toNanos(openMillis));
+        this.maxRate = maxRate;
+        this.minRate = minRate;
+        this.additiveIncrease = additiveIncrease;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    // Non-blocking: takes a permit if one is available right now. The token comes first so a half-open
+    // trial slot is never claimed by a caller that then finds the bucket empty.
+    public boolean tryAcquire() {
+        return bucket.tryAcquire(1) && circuitBreaker.allowRequest();
+    }
+
+    public <T> T execute(Attempt<T> attempt) throws IOException, InterruptedException {
+        calls.incrementAndGet();
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            long waitStart = System.nanoTime();
+            bucket.acquire(1);
+            waitedMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart));
+            if (!circuitBreaker.allowRequest()) {
+                rejected.incrementAndGet();
+                throw new CircuitOpenException(name);
+            }
+
+            RetryableException failure;
+            try {
+                T result = attempt.run();
+                onSuccess();
+                return result;
+            } catch (RetryableException e) {
+                failure = e;
+            } catch (IOException e) {
+                // Connection resets, timeouts and the like
+                failure = new RetryableException(e.getMessage(), 0, 0, e);
+            } catch (RuntimeException | InterruptedException e) {
+                circuitBreaker.onInconclusive();
+                throw e;
+            }
+
+            onFailure(failure);
+            if (attemptNumber >= maxAttempts) {
+                throw exhausted(attemptNumber, failure);
+            }
+            retries.incrementAndGet();
+            Thread.sleep(backoffMillis(attemptNumber, failure.getRetryAfterMillis()));
+        }
+    }
+
+    // Same policy as execute without blocking the caller: waits for a permit and backoffs are scheduled on a
+    // delayed executor, and each attempt is a future, so no thread is held while a request is in flight
+    public <T> CompletableFuture<T> executeAsync(AsyncAttempt<T> attempt) {
+        calls.incrementAndGet();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(attempt, 1, result);
+        return result;
+    }
+
+    private <T> void attemptAsync(AsyncAttempt<T> attempt, int attemptNumber, CompletableFuture<T> result) {
+        if (!bucket.tryAcquire(1)) {
+            long waitNanos = Math.max(bucket.nanosUntilAvailable(1), TimeUnit.MILLISECONDS.toNanos(1));
+            waitedMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS)
+                    .execute(() -> attemptAsync(attempt, attemptNumber, result));
+            return;
+        }
+        if (!circuitBreaker.allowRequest()) {
+            rejected.incrementAndGet();
+            result.completeExceptionally(new CircuitOpenException(name));
+            return;
+        }
+
+        CompletableFuture<T> call;
+        try {
+            call = attempt.run();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((value, error) -> {
+            if (error == null) {
+                onSuccess();
+                result.complete(value);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            RetryableException failure;
+            if (cause instanceof RetryableException retryable) {
+                failure = retryable;
+            } else if (cause instanceof IOException io) {
+                failure = new RetryableException(io.getMessage(), 0, 0, io);
+            } else {
+                circuitBreaker.onInconclusive();
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            onFailure(failure);
+            if (attemptNumber >= maxAttempts) {
+                result.completeExceptionally(exhausted(attemptNumber, failure));
+                return;
+            }
+            retries.incrementAndGet();
+            CompletableFuture.delayedExecutor(backoffMillis(attemptNumber, failure.getRetryAfterMillis()), TimeUnit.MILLISECONDS)
+                    .execute(() -> attemptAsync(attempt, attemptNumber + 1, result));
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.get());
+        stats.put("successes", successes.get());
+        stats.put("throttled", throttled.get());
+        stats.put("failures", failures.get());
+        stats.put("retries", retries.get());
+        stats.put("rejected_by_circuit_breaker", rejected.get());
+        stats.put("rate_limit_wait_ms", waitedMillis.get());
+        stats.put("current_rate_per_second", bucket.getRate());
+        stats.put("circuit_state", circuitBreaker.getState().name());
+        return stats;
+    }
+
+    private void onSuccess() {
+        successes.incrementAndGet();
+        circuitBreaker.onSuccess();
+        double rate = bucket.getRate();
+        if (rate < maxRate) {
+            bucket.setRate(Math.min(maxRate, rate + additiveIncrease));
+        }
+    }
+
+    private void onFailure(RetryableException failure) {
+        if (failure.isThrottled()) {
+            onThrottled();
+        } else {
+            failures.incrementAndGet();
+            circuitBreaker.onFailure();
+        }
+    }
+
+    private IOException exhausted(int attempts, RetryableException failure) {
+        return new IOException("Request to '" + name + "' failed after " + attempts + " attempts: " + failure.getMessage(), failure);
+    }
+
+    private void onThrottled() {
+        throttled.incrementAndGet();
+        // A throttled trial proves the endpoint answers but not that it is healthy; let another call probe
+        circuitBreaker.onInconclusive();
+        bucket.setRate(Math.max(minRate, bucket.getRate() / 2));
+    }
+
+    // Full-jitter exponential backoff, but never sooner than the server asked for via Retry-After
+    private long backoffMillis(int attemptNumber, long retryAfterMillis) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attemptNumber - 1, 20));
+        long jittered = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return Math.max(jittered, retryAfterMillis);
+    }
+}
@@ -0,0 +1,110 @@
+package org.hayden.ragloggingagent.resilience;
+
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Hands out one EndpointGuard per remote endpoint. Guards of the same client start from the same
+// configured rate ceiling, but each keeps its own bucket, throttling state, circuit breaker and metrics.
+@Component
+public class ResilienceRegistry {
+
+    @Value("${resilience.qdrant.requests.per.second:200}")
+    private double qdrantRequestsPerSecond;
+
+    @Value("${resilience.openai.requests.per.second:50}")
+    private double openAiRequestsPerSecond;
+
+    @Value("${resilience.min.requests.per.second:1}")
+    private double minRequestsPerSecond;
+
+    @Value("${resilience.additive.increase:1}")
+    private double additiveIncrease;
+
+    @Value("${resilience.max.attempts:5}")
+    private int maxAttempts;
+
+    @Value("${resilience.initial.backoff.ms:500}")
+    private long initialBackoffMillis;
+
+    @Value("${resilience.max.backoff.ms:30000}")
+    private long maxBackoffMillis;
+
+    @Value("${resilience.circuit.failure.threshold:10}")
+    private int failureThreshold;
+
+    @Value("${resilience.circuit.open.seconds:30}")
+    private long openSeconds;
+
+    private final Map<String, EndpointGuard> guards = new ConcurrentHashMap<>();
+
+    public EndpointGuard qdrant(String endpoint) {
+        return guard("qdrant." + endpoint, qdrantRequestsPerSecond);
+    }
+
+    public EndpointGuard openAi(String endpoint) {
+        return guard("openai." + endpoint, openAiRequestsPerSecond);
+    }
+
+    private EndpointGuard guard(String name, double maxRate) {
+        return guards.computeIfAbsent(name, n -> new EndpointGuard(n, maxRate, minRequestsPerSecond, additiveIncrease,
+                maxAttempts, initialBackoffMillis, maxBackoffMillis, failureThreshold, TimeUnit.SECONDS.toMillis(openSeconds)));
+    }
+
+    // Turns throttling and server-side errors into RetryableException; other statuses are left to the caller
+    public static <T> HttpResponse<T> retryOnServerError(HttpResponse<T> response) throws IOException {
+        int status = response.statusCode();
+        if (status == 429 || status >= 500) {
+            String body = response.body() instanceof InputStream stream
+                    ? readAndClose(stream)
+                    : String.valueOf(response.body());
+            throw new RetryableException("Status " + status + ": " + body, status,
+                    retryAfterMillis(response.headers().firstValue("Retry-After").orElse(null)), null);
+        }
+        return response;
+    }
+
+    private static String readAndClose(InputStream stream) throws IOException {
+        try (stream) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date
+    public static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) return 0;
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (DateTimeParseException ignored) {
+            return 0;
+        }
+    }
+
+    @Tool(
+            name = "Resilience_Stats",
+            description = "Report per-endpoint call, throttling, retry and circuit breaker metrics for the Qdrant and OpenAI clients, including the current adaptive request rate."
+    )
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        guards.forEach((name, guard) -> stats.put(name, guard.stats()));
+        return stats;
+    }
+}
@@ -0,0 +1,31 @@
+package org.hayden.ragloggingagent.resilience;
+
+import java.io.IOException;
+
+// Thrown by a guarded call for failures worth retrying: throttling (429), unavailability (503/5xx)
+// or transport errors. A status code of 0 means no HTTP response was received.
+public class RetryableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final long retryAfterMillis;
+
+    public RetryableException(String message, int statusCode, long retryAfterMillis, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    public boolean isThrottled() {
+        return statusCode == 429 || statusCode == 503;
+    }
+}
@@ -0,0 +1,59 @@
+package org.hayden.ragloggingagent.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+// Token bucket whose refill rate can be changed at runtime. tryAcquire never blocks;
+// acquire sleeps only for as long as the bucket needs to refill.
+public class TokenBucket {
+
+    private final double capacity;
+    private double permitsPerSecond;
+    private double available;
+    private long lastRefillNanos;
+
+    public TokenBucket(double capacity, double permitsPerSecond) {
+        this.capacity = capacity;
+        this.permitsPerSecond = permitsPerSecond;
+        this.available = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public synchronized boolean tryAcquire(double permits) {
+        refill();
+        double needed = Math.min(permits, capacity);
+        if (available >= needed) {
+            available -= needed;
+            return true;
+        }
+        return false;
+    }
+
+    // Nanoseconds until the requested permits could be granted; 0 means now
+    public synchronized long nanosUntilAvailable(double permits) {
+        refill();
+        double missing = Math.min(permits, capacity) - available;
+        return missing <= 0 ? 0 : (long) (missing / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public void acquire(double permits) throws InterruptedException {
+        while (!tryAcquire(permits)) {
+            long waitNanos = Math.max(nanosUntilAvailable(permits), TimeUnit.MILLISECONDS.toNanos(1));
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public synchronized double getRate() {
+        return permitsPerSecond;
+    }
+
+    public synchronized void setRate(double permitsPerSecond) {
+        refill();
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefillNanos) / 1e9 * permitsPerSecond);
+        lastRefillNanos = now;
+    }
+}
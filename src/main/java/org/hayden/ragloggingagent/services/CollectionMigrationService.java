@@ -0,0 +1,210 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.clients.OpenAIClient;
+import org.hayden.ragloggingagent.clients.QdrantClient;
+import org.hayden.ragloggingagent.models.LogFilter;
+import org.hayden.ragloggingagent.models.QdrantPoint;
+import org.hayden.ragloggingagent.models.QdrantPointPage;
+import org.hayden.ragloggingagent.utils.PointIds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Migrations of the stored log collection: moving it to vectors of another size behind its alias without downtime,
+// and rewriting points stored by older versions (31-bit IDs, numbers stored as text) in place. QdrantClient provides
+// the primitives; the state of a running migration lives here.
+@Service
+public class CollectionMigrationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CollectionMigrationService.class);
+
+    @Autowired
+    private QdrantClient qdrantClient;
+
+    @Autowired
+    private OpenAIClient openAIClient;
+
+    @Autowired
+    private QueryResultCache queryCache;
+
+    @Value("${qdrant.collection.name}")
+    private String collectionName;
+
+    private volatile DimensionMigration migration;
+    private volatile DimensionMigration lastMigration;
+
+    private static final class DimensionMigration {
+        final String alias;
+        final String source;
+        final String target;
+        final int dimensions;
+        final AtomicLong copied = new AtomicLong();
+        volatile String state = "copying";
+        volatile String error;
+
+        DimensionMigration(String alias, String source, String target, int dimensions) {
+            this.alias = alias;
+            this.source = source;
+            this.target = target;
+            this.dimensions = dimensions;
+        }
+
+        Map<String, Object> status() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("state", state);
+            status.put("collection", alias);
+            status.put("source", source);
+            status.put("target", target);
+            status.put("dimensions", dimensions);
+            status.put("copied", copied.get());
+            if (error != null) status.put("error", error);
+            return status;
+        }
+    }
+
+    @Tool(
+            name = "Qdrant_Migrate_Collection_Dimensions",
+            description = "Move the log collection to vectors of a different size (e.g. 512 or 256 instead of 1536) to cut memory and search latency, without downtime. Creates a new collection, copies every point into it (shortening the stored vectors, or re-embedding the log lines when growing), keeps new log entries flowing into both, then points the collection name at the new one. The collection name must be an alias, as it is for collections this agent created. Runs in the background; returns its status. Check progress with Qdrant_Collection_Migration_Status."
+    )
+    public synchronized Map<String, Object> migrateCollectionDimensions(int dimensions) throws IOException, InterruptedException {
+        if (dimensions < 1 || dimensions > OpenAIClient.NATIVE_DIMENSIONS) {
+            throw new IllegalArgumentException("Dimensions must be between 1 and " + OpenAIClient.NATIVE_DIMENSIONS);
+        }
+        if (migration != null) {
+            throw new IllegalStateException("A collection migration is already running: " + migration.status());
+        }
+        String source = qdrantClient.aliasTarget(collectionName);
+        if (source == null) {
+            // Qdrant cannot give an alias a name a collection already has, and the data is not ours to delete
+            throw new IllegalStateException("'" + collectionName + "' is a plain collection, not an alias, so it cannot be "
+                    + "switched in place. Create an alias with another name for it (e.g. '" + collectionName + "_live'), "
+                    + "set qdrant.collection.name to that alias, restart, and migrate again.");
+        }
+        String target = collectionName + "_" + dimensions + "d_" + System.currentTimeMillis() / 1000;
+        qdrantClient.createCollection(target, dimensions);
+        qdrantClient.beginBulkLoad(target);
+
+        DimensionMigration started = new DimensionMigration(collectionName, source, target, dimensions);
+        migration = started;
+        lastMigration = started;
+        // New log entries go to both collections from here on, so the copy below misses none of them
+        qdrantClient.mirrorUpserts(collectionName, target, dimensions);
+        Thread.ofVirtual().name("collection-migration").start(() -> runMigration(started));
+        return started.status();
+    }
+
+    @Tool(
+            name = "Qdrant_Collection_Migration_Status",
+            description = "Report the state of the latest collection dimension migration: copying, indexing, switching, done or failed, with the number of points copied so far."
+    )
+    public Map<String, Object> collectionMigrationStatus() {
+        DimensionMigration latest = lastMigration;
+        return latest == null ? Map.of("state", "none") : latest.status();
+    }
+
+    private void runMigration(DimensionMigration running) {
+        try {
+            long start = System.nanoTime();
+            long lastReport = start;
+            Long offset = null;
+            do {
+                QdrantPointPage page = qdrantClient.scrollPointsWithVectors(offset);
+                qdrantClient.copyPoints(running.target, page.points(), running.dimensions);
+
+                long copied = running.copied.addAndGet(page.points().size());
+                long now = System.nanoTime();
+                if (now - lastReport > TimeUnit.SECONDS.toNanos(10)) {
+                    LOGGER.info("Copied {} points from '{}' to '{}' ({} points/s)", copied, running.source, running.target,
+                            Math.round(copied / ((now - start) / 1e9)));
+                    lastReport = now;
+                }
+                offset = page.nextOffset();
+            } while (offset != null);
+
+            running.state = "indexing";
+            qdrantClient.endBulkLoad(running.target);
+
+            running.state = "switching";
+            qdrantClient.switchAlias(running.alias, running.target, running.dimensions);
+            openAIClient.setDimensions(running.dimensions);
+            migration = null;
+            LOGGER.info("Previous collection '{}' kept; delete it once the new one is confirmed", running.source);
+            queryCache.invalidate(running.alias);
+            running.state = "done";
+            LOGGER.info("'{}' now serves {}-dimension vectors from '{}' ({} points copied)",
+                    running.alias, running.dimensions, running.target, running.copied.get());
+        } catch (Exception e) {
+            running.state = "failed";
+            running.error = e.getMessage();
+            qdrantClient.stopMirroring();
+            qdrantClient.abandonBulkLoad(running.target);
+            migration = null;
+            LOGGER.error("Collection migration to '{}' failed; '{}' still serves '{}', and the partial copy can be deleted: {}",
+                    running.target, running.alias, running.source, e.getMessage());
+        }
+    }
+
+    @Tool(
+            name = "Qdrant_Migrate_Points",
+            description = "Bring log entries stored by older versions up to date: move them from the old 31-bit point IDs to the current 64-bit IDs, so re-ingesting the same lines is recognized as a duplicate, and store status, size and response time as numbers, so numeric filters and indexes apply to them. Safe to run again after an interruption. Returns the number of points scanned and migrated."
+    )
+    public Map<String, Long> migratePoints() throws IOException, InterruptedException {
+        long scanned = 0;
+        long migrated = 0;
+        Long offset = null;
+        do {
+            QdrantPointPage page = qdrantClient.scrollPointsWithVectors(offset);
+            List<QdrantPoint> moved = new ArrayList<>();
+            List<Long> oldIds = new ArrayList<>();
+            for (QdrantPoint stored : page.points()) {
+                scanned++;
+                if (stored.payload == null || !(stored.payload.get("raw") instanceof String raw)) continue;
+                long id = PointIds.of(raw);
+                boolean newId = id != stored.id;
+                if (!retype(stored.payload) && !newId) continue;
+
+                if (newId) oldIds.add(stored.id);
+                stored.id = id;
+                moved.add(stored);
+            }
+            // Written under the new ID before the old one is deleted, so an interrupted run loses nothing
+            if (!moved.isEmpty()) {
+                qdrantClient.insertPointsInBulk(collectionName, moved);
+                if (!oldIds.isEmpty()) qdrantClient.deletePoints(collectionName, oldIds);
+                migrated += moved.size();
+            }
+            offset = page.nextOffset();
+        } while (offset != null);
+
+        if (migrated > 0) queryCache.invalidate(collectionName);
+        LOGGER.info("Migrated {} of {} points in '{}'", migrated, scanned, collectionName);
+        return Map.of("scanned", scanned, "migrated", migrated);
+    }
+
+    // Converts integer fields stored as text by older versions; true if anything changed
+    private static boolean retype(Map<String, Object> payload) {
+        boolean changed = false;
+        for (String field : LogFilter.INTEGER_FIELDS) {
+            if (payload.get(field) instanceof String text) {
+                try {
+                    payload.put(field, Long.parseLong(text.strip()));
+                    changed = true;
+                } catch (NumberFormatException e) {
+                    // Left as is; it cannot match a numeric filter either way
+                }
+            }
+        }
+        return changed;
+    }
+}
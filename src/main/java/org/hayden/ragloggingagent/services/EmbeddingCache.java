@@ -0,0 +1,178 @@
+package org.hayden.ragloggingagent.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.hayden.ragloggingagent.clients.OpenAIClient;
+import org.hayden.ragloggingagent.utils.LruCache;
+import org.hayden.ragloggingagent.utils.MappedVectorStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Content-addressed embedding cache keyed by SHA-256(model name + text): an in-memory LRU tier in front
+// of a memory-mapped file that survives restarts. The disk tier is opened lazily on first use.
+@Service
+public class EmbeddingCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddingCache.class);
+
+    // float[1536] plus its array header, the key's record and digest array, and the LinkedHashMap entry
+    private static final long ENTRY_BYTES = OpenAIClient.NATIVE_DIMENSIONS * Float.BYTES + 16 + 16 + 48 + 40;
+
+    @Value("${embedding.cache.enabled:true}")
+    private boolean enabled;
+
+    // Heap budget of the in-memory tier, turned into an entry count at full-size vectors
+    @Value("${embedding.cache.memory.mb:64}")
+    private long memoryMb;
+
+    @Value("${embedding.cache.disk.path:}")
+    private String diskPath;
+
+    @Value("${embedding.cache.disk.segment.mb:64}")
+    private int diskSegmentMb;
+
+    @Value("${embedding.cache.disk.max.mb:4096}")
+    private long diskMaxMb;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private LruCache<Key, float[]> memoryTier;
+    private volatile MappedVectorStore diskTier;
+    private volatile boolean diskTierOpened;
+    private volatile boolean diskFullLogged;
+
+    public record Key(byte[] digest) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && Arrays.equals(digest, k.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(digest);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        memoryTier = new LruCache<>(memoryEntries());
+    }
+
+    private int memoryEntries() {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryMb * 1024 * 1024 / ENTRY_BYTES));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Key key(String model, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return new Key(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error generating hash", e);
+        }
+    }
+
+    public float[] get(Key key) {
+        if (!enabled) return null;
+
+        float[] vector = memoryTier.get(key);
+        if (vector != null) {
+            memoryHits.incrementAndGet();
+            return vector;
+        }
+        MappedVectorStore disk = diskTier();
+        vector = disk != null ? disk.get(key.digest()) : null;
+        if (vector != null) {
+            diskHits.incrementAndGet();
+            memoryTier.put(key, vector);
+            return vector;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(Key key, float[] vector) {
+        if (!enabled) return;
+
+        memoryTier.put(key, vector);
+        MappedVectorStore disk = diskTier();
+        if (disk == null) return;
+
+        try {
+            if (!disk.put(key.digest(), vector) && !diskFullLogged) {
+                diskFullLogged = true;
+                LOGGER.warn("Embedding disk cache reached its {} MB limit; new vectors are kept in memory only", diskMaxMb);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error writing embedding to disk cache: {}", e.getMessage());
+        }
+    }
+
+    @Tool(
+            name = "Embedding_Cache_Stats",
+            description = "Report hit and miss counters of the embedding cache, showing how many embedding API inputs were avoided."
+    )
+    public Map<String, Object> stats() {
+        long hits = memoryHits.get() + diskHits.get();
+        long lookups = hits + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("memory_hits", memoryHits.get());
+        stats.put("disk_hits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hit_rate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        stats.put("memory_entries", memoryTier.size());
+        stats.put("disk_entries", diskTier == null ? 0 : diskTier.size());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (diskTier != null) {
+            try {
+                diskTier.close();
+            } catch (IOException e) {
+                LOGGER.error("Error closing embedding disk cache: {}", e.getMessage());
+            }
+        }
+    }
+
+    private MappedVectorStore diskTier() {
+        if (!diskTierOpened) {
+            synchronized (this) {
+                if (!diskTierOpened) {
+                    if (diskPath != null && !diskPath.isBlank()) {
+                        try {
+                            diskTier = new MappedVectorStore(Path.of(diskPath), diskSegmentMb * 1024 * 1024, diskMaxMb * 1024 * 1024);
+                            LOGGER.info("Opened embedding disk cache '{}' with {} vectors", diskPath, diskTier.size());
+                        } catch (IOException e) {
+                            LOGGER.error("Embedding disk cache disabled, could not open '{}': {}", diskPath, e.getMessage());
+                        }
+                    }
+                    diskTierOpened = true;
+                }
+            }
+        }
+        return diskTier;
+    }
+}
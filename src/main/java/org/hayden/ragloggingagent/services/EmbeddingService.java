@@ -2,21 +2,22 @@ package org.hayden.ragloggingagent.services;
 
 import org.hayden.ragloggingagent.clients.OpenAIClient;
 import org.hayden.ragloggingagent.clients.QdrantClient;
-import org.hayden.ragloggingagent.initializers.QdrantInitializer;
+import org.hayden.ragloggingagent.models.LogBatch;
+import org.hayden.ragloggingagent.models.LogRecord;
 import org.hayden.ragloggingagent.models.QdrantPoint;
+import org.hayden.ragloggingagent.utils.PointIds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class EmbeddingService {
@@ -32,70 +33,137 @@ public class EmbeddingService {
     @Autowired
     private LogParserService logParserService;
 
-    public void processAndPublishLog(List<String> logLines, String collection) throws Exception {
-        List<QdrantPoint> points = new ArrayList<>();
-        List<String> validLogLines = new ArrayList<>();
-        List<Map<String, Object>> metadatas = new ArrayList<>();
-
-        for (String logLine : logLines) {
-            Map<String, Object> metadata = logParserService.parseLogLine(logLine);
-            if (metadata != null) {
-                validLogLines.add(logLine);
-                metadatas.add(metadata);
-            }
-        }
-        if (validLogLines.isEmpty()) return;
+    @Autowired
+    private SeenPointIdFilter seenPointIdFilter;
 
-        List<double[]> vectors = openAIClient.embedLogMessages(validLogLines);
+    @Autowired(required = false)
+    private List<IngestListener> ingestListeners = List.of();
 
-        for (int i = 0; i < validLogLines.size(); i++) {
-            String logLine = validLogLines.get(i);
-            Map<String, Object> metadata = metadatas.get(i);
+    @Value("${ingest.pipeline.parse.concurrency:2}")
+    private int parseConcurrency;
 
-            // Generate unique hash-based ID
-            String uniqueHash = sha256Hex(logLine);
-            int id = hexToInt(uniqueHash);
+    @Value("${ingest.pipeline.embed.concurrency:4}")
+    private int embedConcurrency;
 
+    @Value("${ingest.pipeline.dedup.concurrency:2}")
+    private int dedupConcurrency;
 
+    @Value("${ingest.pipeline.upsert.concurrency:2}")
+    private int upsertConcurrency;
 
-            // Deduplication
-            if (qdrantClient.pointExists(collection, id)) {
-                LOGGER.info("Point already exists in Qdrant: {}", id);
-                continue;
-            } else {
-                LOGGER.info("Adding QdrantPoint: id={}, logLine={}, metadata={}", id, logLine, metadata);
-            }
+    @Value("${ingest.pipeline.queue.capacity:4}")
+    private int queueCapacity;
 
-            QdrantPoint point = new QdrantPoint();
-            point.id = id;
-            point.vector = vectors.get(i);
-            point.payload = metadata;
+    @Value("${ingest.pipeline.report.interval.seconds:30}")
+    private long reportIntervalSeconds;
 
-            points.add(point);
+    // Synchronous path: runs every stage for a single chunk on the calling thread
+    public void processAndPublishLog(List<String> logLines, String collection) throws Exception {
+        LogBatch batch = new LogBatch(collection, logLines);
+        for (IngestionPipeline.StageFunction stage : List.<IngestionPipeline.StageFunction>of(
+                this::parse, this::deduplicate, this::embed, this::upsert)) {
+            batch = stage.apply(batch);
+            if (batch == null) return;
+        }
+    }
+
+    // Concurrent path: each stage has its own workers and bounded hand-off queue, so embedding calls and
+    // Qdrant upserts for different chunks overlap. Submit batches, then close to drain and report throughput.
+    public IngestionPipeline openPipeline() {
+        return new IngestionPipeline(TimeUnit.SECONDS.toMillis(reportIntervalSeconds))
+                .stage("parse", parseConcurrency, queueCapacity, this::parse)
+                .stage("dedup", dedupConcurrency, queueCapacity, this::deduplicate)
+                .stage("embed", embedConcurrency, queueCapacity, this::embed)
+                .stage("upsert", upsertConcurrency, queueCapacity, this::upsert)
+                .onClose(seenPointIdFilter::saveAll)
+                .start();
+    }
+
+    // Batches from the parallel file parser arrive with records already set and only need their IDs
+    private LogBatch parse(LogBatch batch) {
+        if (batch.records == null) {
+            batch.records = new ArrayList<>();
+            for (String logLine : batch.lines) {
+                LogRecord record = logParserService.parse(logLine);
+                if (record != null) {
+                    batch.records.add(record);
+                }
+            }
         }
 
-        if (!points.isEmpty()) {
-            qdrantClient.insertPointsInBulk(collection, points);
+        batch.validLines = new ArrayList<>(batch.records.size());
+        batch.ids = new ArrayList<>(batch.records.size());
+        for (LogRecord record : batch.records) {
+            batch.validLines.add(record.raw());
+            batch.ids.add(PointIds.of(record.raw()));
         }
+        return batch.validLines.isEmpty() ? null : batch;
     }
 
-    private static String sha256Hex(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
+    // Runs before embedding so duplicates never cost an API call: drops repeats within the chunk, IDs the
+    // local seen-ID filter already knows, and whatever one batched Qdrant lookup reports as stored
+    private LogBatch deduplicate(LogBatch batch) throws IOException, InterruptedException {
+        Set<Long> candidates = new LinkedHashSet<>();
+        int skippedLocally = 0;
+        for (Long id : batch.ids) {
+            if (seenPointIdFilter.mightContain(batch.collection, id)) {
+                skippedLocally++;
+            } else {
+                candidates.add(id);
+            }
+        }
+
+        Set<Long> existing = candidates.isEmpty()
+                ? Set.of()
+                : qdrantClient.findExistingPointIds(batch.collection, candidates);
+        seenPointIdFilter.markSeen(batch.collection, existing);
+
+        List<String> newLines = new ArrayList<>();
+        List<LogRecord> newRecords = new ArrayList<>();
+        List<Long> newIds = new ArrayList<>();
+        for (int i = 0; i < batch.ids.size(); i++) {
+            Long id = batch.ids.get(i);
+            // Removing from candidates also drops repeated lines within this chunk
+            if (!existing.contains(id) && candidates.remove(id)) {
+                newLines.add(batch.validLines.get(i));
+                newRecords.add(batch.records.get(i));
+                newIds.add(id);
             }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error generating hash", e);
         }
+        LOGGER.info("Deduplicated chunk: {} lines, {} skipped by local filter, {} already in Qdrant, {} new",
+                batch.ids.size(), skippedLocally, existing.size(), newIds.size());
+
+        batch.validLines = newLines;
+        batch.records = newRecords;
+        batch.ids = newIds;
+        return newIds.isEmpty() ? null : batch;
     }
 
-    private static int hexToInt(String hex) {
-        return Math.abs(new BigInteger(hex, 16).intValue());
+    private LogBatch embed(LogBatch batch) throws IOException, InterruptedException {
+        batch.vectors = openAIClient.embedLogMessages(batch.validLines);
+        batch.points = new ArrayList<>();
+
+        for (int i = 0; i < batch.validLines.size(); i++) {
+            QdrantPoint point = new QdrantPoint();
+            point.id = batch.ids.get(i);
+            point.vector = batch.vectors.get(i);
+            point.payload = batch.records.get(i).toPayload();
+
+            batch.points.add(point);
+        }
+        return batch;
+    }
+
+    private LogBatch upsert(LogBatch batch) throws IOException, InterruptedException {
+        qdrantClient.insertPointsInBulk(batch.collection, batch.points);
+        seenPointIdFilter.markSeen(batch.collection, batch.ids);
+        for (IngestListener listener : ingestListeners) {
+            try {
+                listener.onUpserted(batch);
+            } catch (RuntimeException e) {
+                LOGGER.error("Ingest listener {} failed: {}", listener.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+        return batch;
     }
-}
\ No newline at end of file
+}
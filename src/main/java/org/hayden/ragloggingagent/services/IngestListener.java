@@ -0,0 +1,16 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.models.LogBatch;
+import org.springframework.core.Ordered;
+
+// Told about every batch once its points are stored in Qdrant. The batch only holds lines that were new,
+// with ids, records and points in matching order. Listeners are called in getOrder() order.
+public interface IngestListener extends Ordered {
+
+    void onUpserted(LogBatch batch);
+
+    @Override
+    default int getOrder() {
+        return 0;
+    }
+}
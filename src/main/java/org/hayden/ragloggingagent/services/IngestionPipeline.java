@@ -0,0 +1,213 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.models.LogBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Chain of stages connected by bounded queues. Every stage runs its own pool of virtual-thread workers,
+// so e.g. several embedding calls and several upserts can be in flight at the same time.
+public class IngestionPipeline implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    // Sentinel telling a worker that no more batches will arrive
+    private static final LogBatch END_OF_STREAM = new LogBatch(null, List.of());
+
+    @FunctionalInterface
+    public interface StageFunction {
+        // Returns the batch to hand downstream, or null to drop it
+        LogBatch apply(LogBatch batch) throws Exception;
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private boolean failureThrown;
+    private final long startNanos = System.nanoTime();
+    private final long reportIntervalMillis;
+    private final List<Runnable> closeHooks = new ArrayList<>();
+    private Thread reporter;
+    private boolean closed;
+
+    public IngestionPipeline(long reportIntervalMillis) {
+        this.reportIntervalMillis = reportIntervalMillis;
+    }
+
+    public IngestionPipeline stage(String name, int concurrency, int queueCapacity, StageFunction function) {
+        Stage stage = new Stage(name, Math.max(1, concurrency), Math.max(1, queueCapacity), function);
+        if (!stages.isEmpty()) {
+            stages.get(stages.size() - 1).downstream = stage;
+        }
+        stages.add(stage);
+        return this;
+    }
+
+    // Runs after every stage has drained, whether or not the pipeline failed
+    public IngestionPipeline onClose(Runnable hook) {
+        closeHooks.add(hook);
+        return this;
+    }
+
+    public IngestionPipeline start() {
+        stages.forEach(Stage::start);
+        if (reportIntervalMillis > 0) {
+            reporter = Thread.ofVirtual().name("ingest-pipeline-reporter").start(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(reportIntervalMillis);
+                        report("progress");
+                    }
+                } catch (InterruptedException ignored) {
+                    // Pipeline closed
+                }
+            });
+        }
+        return this;
+    }
+
+    // Blocks while the first stage's queue is full, which throttles the producer to the pipeline's pace
+    public void submit(LogBatch batch) throws IOException, InterruptedException {
+        Stage first = stages.get(0);
+        while (!first.input.offer(batch, 1, TimeUnit.SECONDS)) {
+            rethrowFailure();
+        }
+        rethrowFailure();
+    }
+
+    public boolean hasFailed() {
+        return failure.get() != null;
+    }
+
+    // Not declared to throw InterruptedException, which try-with-resources would otherwise have to handle; an
+    // interrupt while draining restores the flag and surfaces as InterruptedIOException
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        try {
+            Stage first = stages.get(0);
+            for (int i = 0; i < first.concurrency; i++) {
+                first.input.put(END_OF_STREAM);
+            }
+            for (Stage stage : stages) {
+                stage.finished.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while draining the ingestion pipeline");
+            interrupted.initCause(e);
+            throw interrupted;
+        } finally {
+            if (reporter != null) {
+                reporter.interrupt();
+            }
+        }
+        report("completed");
+        closeHooks.forEach(Runnable::run);
+        rethrowFailure();
+    }
+
+    // A stage's IOException or RuntimeException is rethrown as is, anything else wrapped in an IOException
+    private void rethrowFailure() throws IOException {
+        Exception e = failure.get();
+        // Throw only once so try-with-resources does not attempt to suppress the exception with itself
+        if (e != null && !failureThrown) {
+            failureThrown = true;
+            if (e instanceof IOException io) throw io;
+            if (e instanceof RuntimeException runtime) throw runtime;
+            throw new IOException("Ingestion pipeline failed", e);
+        }
+    }
+
+    private void report(String phase) {
+        double elapsedSeconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-9);
+        for (Stage stage : stages) {
+            long lines = stage.linesOut.get();
+            LOGGER.info("Ingestion pipeline {} - stage '{}' (x{}): {} batches, {} lines, {} lines/s overall, {} lines/s per busy worker, queue {}/{}",
+                    phase, stage.name, stage.concurrency, stage.batchesOut.get(), lines,
+                    String.format("%.1f", lines / elapsedSeconds),
+                    String.format("%.1f", lines / Math.max(stage.busyNanos.get() / 1e9, 1e-9)),
+                    stage.input.size(), stage.capacity);
+        }
+    }
+
+    private final class Stage {
+        private final String name;
+        private final int concurrency;
+        private final int capacity;
+        private final StageFunction function;
+        private final BlockingQueue<LogBatch> input;
+        private final CountDownLatch finished;
+        private final AtomicInteger runningWorkers;
+        private final AtomicLong batchesOut = new AtomicLong();
+        private final AtomicLong linesOut = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private Stage downstream;
+
+        private Stage(String name, int concurrency, int capacity, StageFunction function) {
+            this.name = name;
+            this.concurrency = concurrency;
+            this.capacity = capacity;
+            this.function = function;
+            this.input = new ArrayBlockingQueue<>(capacity);
+            this.finished = new CountDownLatch(concurrency);
+            this.runningWorkers = new AtomicInteger(concurrency);
+        }
+
+        private void start() {
+            for (int i = 0; i < concurrency; i++) {
+                Thread.ofVirtual().name("ingest-" + name + "-" + i).start(this::work);
+            }
+        }
+
+        private void work() {
+            try {
+                LogBatch batch;
+                while ((batch = input.take()) != END_OF_STREAM) {
+                    // After a failure keep draining so upstream stages never block on a full queue
+                    if (failure.get() != null) continue;
+                    try {
+                        long start = System.nanoTime();
+                        LogBatch result = function.apply(batch);
+                        busyNanos.addAndGet(System.nanoTime() - start);
+                        if (result != null) {
+                            batchesOut.incrementAndGet();
+                            linesOut.addAndGet(result.size());
+                            if (downstream != null) {
+                                downstream.input.put(result);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        LOGGER.error("Ingestion stage '{}' failed: {}", name, e.getMessage());
+                        failure.compareAndSet(null, e);
+                    }
+                }
+                // The last worker of this stage propagates end-of-stream to every downstream worker
+                if (runningWorkers.decrementAndGet() == 0 && downstream != null) {
+                    for (int i = 0; i < downstream.concurrency; i++) {
+                        downstream.input.put(END_OF_STREAM);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.services.TimeRollups.Interval;
+import org.hayden.ragloggingagent.utils.LatencySketch;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Response-time sketches per (time bucket, endpoint, status). Percentiles for any range and combination are
+// answered by merging the matching sketches, so the cost depends on the number of buckets and endpoints, not on
+// the number of log lines. Every endpoint/status pair costs a sketch per bucket, so retention is kept separately
+// and short for the finer intervals. Not thread-safe; the aggregation index guards it with its lock.
+final class LatencySketchStore {
+
+    static final List<String> GROUP_FIELDS = List.of("endpoint", "status");
+
+    private final Map<Interval, TreeMap<Long, Map<String, Map<String, LatencySketch>>>> series = new EnumMap<>(Interval.class);
+    private final Map<Interval, Integer> maxBuckets = new EnumMap<>(Interval.class);
+
+    LatencySketchStore(int maxMinuteBuckets, int maxHourBuckets, int maxDayBuckets) {
+        maxBuckets.put(Interval.MINUTE, maxMinuteBuckets);
+        maxBuckets.put(Interval.HOUR, maxHourBuckets);
+        maxBuckets.put(Interval.DAY, maxDayBuckets);
+        for (Interval interval : Interval.values()) {
+            series.put(interval, new TreeMap<>());
+        }
+    }
+
+    void add(long timestampMillis, String endpoint, String status, long responseTime) {
+        if (timestampMillis == Long.MIN_VALUE || responseTime < 0 || endpoint == null || status == null) return;
+        for (Interval interval : Interval.values()) {
+            TreeMap<Long, Map<String, Map<String, LatencySketch>>> buckets = series.get(interval);
+            int max = maxBuckets.get(interval);
+            long start = TimeRollups.bucketStart(timestampMillis, interval);
+            Map<String, Map<String, LatencySketch>> bucket = buckets.get(start);
+            if (bucket == null) {
+                if (max <= 0 || (buckets.size() >= max && start < buckets.firstKey())) continue;
+                bucket = new HashMap<>();
+                buckets.put(start, bucket);
+                if (buckets.size() > max) buckets.pollFirstEntry();
+            }
+            bucket.computeIfAbsent(endpoint, e -> new HashMap<>())
+                    .computeIfAbsent(status, s -> new LatencySketch())
+                    .record(responseTime);
+        }
+    }
+
+    // Finest interval whose retained buckets still reach back to start
+    Interval intervalFor(long start) {
+        for (Interval interval : Interval.values()) {
+            TreeMap<Long, ?> buckets = series.get(interval);
+            int max = maxBuckets.get(interval);
+            if (max > 0 && !buckets.isEmpty() && (buckets.size() < max || buckets.firstKey() <= start)) {
+                return interval;
+            }
+        }
+        return Interval.DAY;
+    }
+
+    // Percentiles over [start, end] for the matching endpoint and status (null matches all), one row per value of
+    // groupBy, or a single row when groupBy is null; rows are ordered by request count, largest first
+    Map<String, Object> percentiles(long start, long end, String endpoint, String status, String groupBy, int limit) {
+        Interval interval = intervalFor(start);
+        Map<String, LatencySketch> groups = new HashMap<>();
+        var buckets = series.get(interval).subMap(TimeRollups.bucketStart(start, interval), true, end, true);
+        for (Map<String, Map<String, LatencySketch>> bucket : buckets.values()) {
+            for (Map.Entry<String, Map<String, LatencySketch>> byEndpoint : bucket.entrySet()) {
+                if (endpoint != null && !endpoint.equals(byEndpoint.getKey())) continue;
+                for (Map.Entry<String, LatencySketch> byStatus : byEndpoint.getValue().entrySet()) {
+                    if (status != null && !status.equals(byStatus.getKey())) continue;
+                    String group = groupBy == null ? "all"
+                            : "endpoint".equals(groupBy) ? byEndpoint.getKey() : byStatus.getKey();
+                    groups.computeIfAbsent(group, g -> new LatencySketch()).merge(byStatus.getValue());
+                }
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        groups.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LatencySketch> e) -> e.getValue().count()).reversed())
+                .limit(Math.max(1, limit))
+                .forEach(entry -> {
+                    LatencySketch sketch = entry.getValue();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    if (groupBy != null) row.put(groupBy, entry.getKey());
+                    row.put("count", sketch.count());
+                    row.put("mean_ms", Math.round(sketch.mean() * 10) / 10.0);
+                    row.put("p50_ms", sketch.quantile(0.50));
+                    row.put("p90_ms", sketch.quantile(0.90));
+                    row.put("p95_ms", sketch.quantile(0.95));
+                    row.put("p99_ms", sketch.quantile(0.99));
+                    row.put("max_ms", sketch.max());
+                    rows.add(row);
+                });
+
+        // Buckets are whole intervals, so the range actually covered is widened to their boundaries
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("resolution", interval.name().toLowerCase(Locale.ROOT));
+        result.put("start", Instant.ofEpochMilli(TimeRollups.bucketStart(start, interval)).toString());
+        result.put("end", Instant.ofEpochMilli(TimeRollups.bucketStart(end, interval) + interval.millis - 1).toString());
+        result.put("groups", groups.size());
+        result.put("rows", rows);
+        return result;
+    }
+}
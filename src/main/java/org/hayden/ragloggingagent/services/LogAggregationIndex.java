@@ -0,0 +1,514 @@
+package org.hayden.ragloggingagent.services;
+
+import jakarta.annotation.PostConstruct;
+import org.hayden.ragloggingagent.models.LogBatch;
+import org.hayden.ragloggingagent.models.LogFilter;
+import org.hayden.ragloggingagent.models.LogRecord;
+import org.hayden.ragloggingagent.utils.DateFormatUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory columnar copy of the payload fields of the configured collection. Fields are dictionary-encoded:
+// a row stores one int code per field and each distinct value is kept once, so group-by counts and distinct values
+// come from a scan over int arrays instead of a scroll over the whole collection. The timestamp is kept as epoch
+// millis plus its offset and rendered back to text on demand, since nearly every row has a distinct one. A field whose
+// dictionary outgrows aggregation.dictionary.max.values is dropped and queries on it go back to Qdrant. Time rollups
+// with latency sketches are maintained alongside for histogram queries. It is loaded by a rebuild scroll and kept
+// current by ingest notifications; rows are keyed by point ID, so a point upserted twice is counted once.
+@Service
+public class LogAggregationIndex implements IngestListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogAggregationIndex.class);
+
+    public static final List<String> FIELDS = List.of(
+            "timestamp", "status", "ip", "request_type", "endpoint", "size", "referer", "user_agent", "response_time");
+
+    private static final String TIMESTAMP = "timestamp";
+
+    @Value("${qdrant.collection.name}")
+    private String collectionName;
+
+    @Value("${aggregation.index.enabled:true}")
+    private boolean enabled;
+
+    // Distinct values kept per field before the field is dropped from the index (ip and user_agent get there first)
+    @Value("${aggregation.dictionary.max.values:100000}")
+    private int maxDictionaryValues;
+
+    // Rollup retention per interval, in buckets (7 days of minutes, a year of hours, 10 years of days)
+    @Value("${aggregation.rollup.minute.buckets:10080}")
+    private int minuteBuckets;
+
+    @Value("${aggregation.rollup.hour.buckets:8760}")
+    private int hourBuckets;
+
+    @Value("${aggregation.rollup.day.buckets:3650}")
+    private int dayBuckets;
+
+    // Latency sketches exist per endpoint and status, so they are retained for less time (2 hours, 7 days, a year)
+    @Value("${aggregation.latency.minute.buckets:120}")
+    private int latencyMinuteBuckets;
+
+    @Value("${aggregation.latency.hour.buckets:168}")
+    private int latencyHourBuckets;
+
+    @Value("${aggregation.latency.day.buckets:365}")
+    private int latencyDayBuckets;
+
+    private static final int MAX_HISTOGRAM_BUCKETS = 1440;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Columns columns;
+    private volatile boolean ready;
+
+    // Set while a rebuild scroll is running. Points upserted meanwhile go into it as well; the scroll may return
+    // them again, and the ID check skips them then.
+    private Columns staging;
+
+    private static final class Column {
+        final Map<String, Integer> codes = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+        int[] rows = new int[1024];
+        // Rough heap cost of the dictionary: the string, its map entry and boxed code, and its list slot
+        long dictionaryBytes;
+
+        int encode(String value) {
+            return codes.computeIfAbsent(value == null ? "" : value, v -> {
+                values.add(v);
+                dictionaryBytes += 112 + v.length();
+                return values.size() - 1;
+            });
+        }
+    }
+
+    // Open-addressing set of point IDs, 8 to 16 bytes per row
+    private static final class IdSet {
+        long[] slots = new long[2048];
+        int size;
+        boolean zero;
+
+        boolean add(long id) {
+            if (id == 0) {
+                if (zero) return false;
+                zero = true;
+                return true;
+            }
+            if ((size + 1) * 2 > slots.length) grow();
+            int mask = slots.length - 1;
+            for (int i = Long.hashCode(id * 0x9E3779B97F4A7C15L) & mask; ; i = (i + 1) & mask) {
+                if (slots[i] == id) return false;
+                if (slots[i] == 0) {
+                    slots[i] = id;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            size = 0;
+            for (long id : old) {
+                if (id != 0) add(id);
+            }
+        }
+    }
+
+    // Rows plus the rollups and latency sketches derived from them, so a rebuild replaces all of them at once
+    private static final class Columns {
+        final Map<String, Column> byField = new LinkedHashMap<>();
+        final Set<String> dropped = new LinkedHashSet<>();
+        final IdSet ids = new IdSet();
+        final TimeRollups rollups;
+        final LatencySketchStore latency;
+        final int maxDictionaryValues;
+        long[] timestampMillis = new long[1024];
+        // The timestamp's offset ("+0530"), or the whole text when it does not render back from millis and offset
+        final Column timestampZones = new Column();
+        int size;
+
+        Columns(TimeRollups rollups, LatencySketchStore latency, int maxDictionaryValues) {
+            this.rollups = rollups;
+            this.latency = latency;
+            this.maxDictionaryValues = maxDictionaryValues;
+            FIELDS.stream().filter(field -> !field.equals(TIMESTAMP)).forEach(field -> byField.put(field, new Column()));
+        }
+
+        // False when the point is already indexed
+        boolean add(long id, Map<String, String> payload) {
+            if (!ids.add(id)) return false;
+            if (size == timestampMillis.length) {
+                timestampMillis = Arrays.copyOf(timestampMillis, size * 2);
+                timestampZones.rows = Arrays.copyOf(timestampZones.rows, size * 2);
+                byField.values().forEach(column -> column.rows = Arrays.copyOf(column.rows, size * 2));
+            }
+            List<String> full = null;
+            for (Map.Entry<String, Column> entry : byField.entrySet()) {
+                Column column = entry.getValue();
+                column.rows[size] = column.encode(payload.get(entry.getKey()));
+                if (column.values.size() > maxDictionaryValues) {
+                    if (full == null) full = new ArrayList<>();
+                    full.add(entry.getKey());
+                }
+            }
+            if (full != null) {
+                for (String field : full) {
+                    LOGGER.warn("Aggregation index dropped '{}' after {} distinct values; queries on it go to Qdrant",
+                            field, maxDictionaryValues);
+                    byField.remove(field);
+                    dropped.add(field);
+                }
+            }
+            String timestamp = payload.get(TIMESTAMP);
+            timestampMillis[size] = timestamp == null ? Long.MIN_VALUE : LogParserService.parseTimestamp(timestamp);
+            timestampZones.rows[size] = timestampZones.encode(zoneOf(timestamp, timestampMillis[size]));
+            rollups.add(timestampMillis[size], payload);
+            latency.add(timestampMillis[size], payload.get("endpoint"), payload.get("status"),
+                    TimeRollups.parseResponseTime(payload.get("response_time")));
+            size++;
+            return true;
+        }
+
+        String timestamp(int row) {
+            String zone = timestampZones.values.get(timestampZones.rows[row]);
+            return timestampMillis[row] == Long.MIN_VALUE || zone.length() != 5
+                    ? zone : LogParserService.formatTimestamp(timestampMillis[row], zone);
+        }
+
+        String value(String field, int row) {
+            if (field.equals(TIMESTAMP)) return timestamp(row);
+            Column column = byField.get(field);
+            return column.values.get(column.rows[row]);
+        }
+
+        // Whether the field and every condition of the filter can be answered from the columns
+        boolean covers(String field, LogFilter filter) {
+            if (field != null && dropped.contains(field)) return false;
+            return filter == null || filter.matches().keySet().stream().noneMatch(dropped::contains);
+        }
+
+        long heapBytes() {
+            long bytes = timestampMillis.length * 8L + ids.slots.length * 8L
+                    + timestampZones.rows.length * 4L + timestampZones.dictionaryBytes;
+            for (Column column : byField.values()) {
+                bytes += column.rows.length * 4L + column.dictionaryBytes;
+            }
+            return bytes;
+        }
+
+        private static String zoneOf(String timestamp, long millis) {
+            if (timestamp == null) return "";
+            if (millis == Long.MIN_VALUE) return timestamp;
+            String zone = timestamp.substring(timestamp.lastIndexOf(' ') + 1);
+            try {
+                if (zone.length() == 5 && LogParserService.formatTimestamp(millis, zone).equals(timestamp)) return zone;
+            } catch (DateTimeException e) {
+                // Not an offset; keep the text as it is
+            }
+            return timestamp;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowVisitor {
+        void visit(int row);
+    }
+
+    @PostConstruct
+    public void init() {
+        columns = newColumns();
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onUpserted(LogBatch batch) {
+        if (!enabled || !collectionName.equals(batch.collection)) return;
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < batch.records.size(); i++) {
+                Map<String, String> payload = payload(batch.records.get(i));
+                if (ready) {
+                    columns.add(batch.ids.get(i), payload);
+                }
+                if (staging != null) {
+                    staging.add(batch.ids.get(i), payload);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // The current index keeps answering queries until the rebuilt one replaces it
+    public void beginRebuild() {
+        lock.writeLock().lock();
+        try {
+            if (staging != null) {
+                throw new IllegalStateException("An aggregation index rebuild is already running");
+            }
+            staging = newColumns();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addRebuildPage(List<Long> ids, List<Map<String, String>> payloads) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                staging.add(ids.get(i), payloads.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void finishRebuild() {
+        lock.writeLock().lock();
+        try {
+            columns = staging;
+            ready = true;
+            LOGGER.info("Aggregation index for '{}' rebuilt with {} rows", collectionName, columns.size);
+        } finally {
+            staging = null;
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void abortRebuild() {
+        lock.writeLock().lock();
+        try {
+            staging = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Count of rows per value of groupField among the rows matching the filter, or null when the field or a
+    // condition is on a field the index dropped
+    public Map<String, Integer> groupBy(String groupField, LogFilter filter) {
+        lock.readLock().lock();
+        try {
+            if (!columns.covers(groupField, filter)) return null;
+            Map<String, Integer> result = new HashMap<>();
+            if (TIMESTAMP.equals(groupField)) {
+                scan(filter, row -> result.merge(columns.timestamp(row), 1, Integer::sum));
+                return result;
+            }
+            Column group = columns.byField.get(groupField);
+            if (group == null) return result;
+
+            int[] counts = new int[group.values.size()];
+            int[] groupRows = group.rows;
+            scan(filter, row -> counts[groupRows[row]]++);
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] > 0) {
+                    result.put(group.values.get(code), counts[code]);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public record TimeSeries(String interval, SortedMap<Long, Map<String, Integer>> buckets) {
+    }
+
+    // Counts of the rows matching the filter per time bucket, split by seriesField (or one "count" series when null).
+    // The interval is picked from the filter's time range, or from the whole data range without one. Null when the
+    // series or a condition is on a field the index dropped.
+    public TimeSeries timeSeries(LogFilter filter, String seriesField) {
+        lock.readLock().lock();
+        try {
+            if (!columns.covers(seriesField, filter)) return null;
+            SortedMap<Long, Map<String, Integer>> buckets = new TreeMap<>();
+            long[] range = filter.hasTimeRange() ? new long[]{filter.startMillis(), filter.endMillis()} : columns.rollups.range();
+            if (range == null) return new TimeSeries(null, buckets);
+            TimeRollups.Interval interval = TimeRollups.Interval.forRange(range[0], range[1], MAX_HISTOGRAM_BUCKETS);
+
+            boolean known = seriesField != null && (TIMESTAMP.equals(seriesField) || columns.byField.containsKey(seriesField));
+            long[] timestamps = columns.timestampMillis;
+            scan(filter, row -> {
+                if (timestamps[row] == Long.MIN_VALUE) return;
+                String name = known ? columns.value(seriesField, row) : "count";
+                buckets.computeIfAbsent(TimeRollups.bucketStart(timestamps[row], interval), b -> new HashMap<>())
+                        .merge(name, 1, Integer::sum);
+            });
+            return new TimeSeries(interval.name().toLowerCase(Locale.ROOT), buckets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Visits every row matching all conditions and the time range of the filter
+    private void scan(LogFilter filter, RowVisitor visitor) {
+        // Resolve every condition to the dictionary codes it accepts once; a condition accepting none matches nothing
+        Map<String, String> matches = filter.matches();
+        int[][] conditionRows = new int[matches.size()][];
+        boolean[][] conditionCodes = new boolean[matches.size()][];
+        int c = 0;
+        for (Map.Entry<String, String> match : matches.entrySet()) {
+            Column column = columns.byField.get(match.getKey());
+            boolean[] accepted = new boolean[column.values.size()];
+            boolean any = false;
+            if (LogFilter.INTEGER_FIELDS.contains(match.getKey())) {
+                LogFilter.Bounds bounds = LogFilter.bounds(match.getKey(), match.getValue());
+                for (int code = 0; code < accepted.length; code++) {
+                    accepted[code] = bounds.contains(column.values.get(code));
+                    any |= accepted[code];
+                }
+            } else {
+                Integer code = column.codes.get(match.getValue());
+                if (code != null) {
+                    accepted[code] = true;
+                    any = true;
+                }
+            }
+            if (!any) return;
+            conditionRows[c] = column.rows;
+            conditionCodes[c++] = accepted;
+        }
+        boolean timeRange = filter.hasTimeRange();
+        long start = timeRange ? filter.startMillis() : Long.MIN_VALUE;
+        long end = timeRange ? filter.endMillis() : Long.MAX_VALUE;
+
+        long[] timestamps = columns.timestampMillis;
+        rows:
+        for (int row = 0; row < columns.size; row++) {
+            for (int i = 0; i < conditionRows.length; i++) {
+                if (!conditionCodes[i][conditionRows[i][row]]) continue rows;
+            }
+            if (timeRange && (timestamps[row] < start || timestamps[row] > end)) continue;
+            visitor.visit(row);
+        }
+    }
+
+    @Tool(
+            name = "Log_Time_Histogram",
+            description = "Count log entries per minute, hour or day over a time range from pre-aggregated rollups, with p50/p95/p99 response times per bucket and for the whole range. Provide start and end timestamps (ISO 8601 or log format; null for all data), the interval (minute, hour or day; null picks one that gives at most 1440 buckets), and optionally a dimension (status, endpoint or request_type) with a value to count only matching entries. Use null for anything you don't want to specify."
+    )
+    public Map<String, Object> timeHistogram(String startTimestamp, String endTimestamp, String interval, String dimension, String value) {
+        if (!isReady()) {
+            throw new IllegalStateException("The aggregation index is still loading; try again shortly");
+        }
+        if (dimension != null && !TimeRollups.DIMENSIONS.contains(dimension)) {
+            throw new IllegalArgumentException("Dimension must be one of " + TimeRollups.DIMENSIONS);
+        }
+        lock.readLock().lock();
+        try {
+            long[] range = columns.rollups.range();
+            if (range == null) return Map.of("total", 0, "buckets", List.of());
+            long start = startTimestamp == null ? range[0] : DateFormatUtil.toEpochMillis(startTimestamp);
+            long end = endTimestamp == null ? range[1] : DateFormatUtil.toEpochMillis(endTimestamp);
+            TimeRollups.Interval resolved = interval == null
+                    ? TimeRollups.Interval.forRange(start, end, MAX_HISTOGRAM_BUCKETS)
+                    : TimeRollups.Interval.parse(interval);
+            return columns.rollups.histogram(resolved, start, end, dimension, dimension == null ? null : value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Tool(
+            name = "Log_Latency_Percentiles",
+            description = "Get response time percentiles (p50, p90, p95, p99, mean and max in ms) from pre-aggregated sketches, optionally for one endpoint and/or status code, and optionally broken down per endpoint or per status. Provide start and end timestamps (ISO 8601 or log format; null for all retained data), the endpoint and status to filter on, groupBy (endpoint, status, or null for a single overall row), and the maximum number of rows (largest request counts first). Use null for anything you don't want to specify."
+    )
+    public Map<String, Object> latencyPercentiles(String startTimestamp, String endTimestamp, String endpoint, String status,
+                                                  String groupBy, Integer limit) {
+        if (!isReady()) {
+            throw new IllegalStateException("The aggregation index is still loading; try again shortly");
+        }
+        if (groupBy != null && !LatencySketchStore.GROUP_FIELDS.contains(groupBy)) {
+            throw new IllegalArgumentException("groupBy must be one of " + LatencySketchStore.GROUP_FIELDS);
+        }
+        lock.readLock().lock();
+        try {
+            long[] range = columns.rollups.range();
+            if (range == null) return Map.of("groups", 0, "rows", List.of());
+            long start = startTimestamp == null ? range[0] : DateFormatUtil.toEpochMillis(startTimestamp);
+            long end = endTimestamp == null ? range[1] : DateFormatUtil.toEpochMillis(endTimestamp);
+            return columns.latency.percentiles(start, end, endpoint, status, groupBy, limit == null ? 50 : limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Null when the index dropped the field
+    public Set<String> distinctValues(String field) {
+        lock.readLock().lock();
+        try {
+            if (!columns.covers(field, null)) return null;
+            if (TIMESTAMP.equals(field)) {
+                Set<String> values = new HashSet<>();
+                for (int row = 0; row < columns.size; row++) values.add(columns.timestamp(row));
+                return values;
+            }
+            Column column = columns.byField.get(field);
+            return column == null ? new HashSet<>() : new HashSet<>(column.values);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Tool(
+            name = "Aggregation_Index_Stats",
+            description = "Report whether the in-memory aggregation index is loaded, how many log entries it holds, its estimated heap use in bytes (rollups and latency sketches excluded), the number of distinct values per metadata field, and the fields it dropped for having too many distinct values."
+    )
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("enabled", enabled);
+            stats.put("ready", ready);
+            stats.put("rebuilding", staging != null);
+            stats.put("rows", columns.size);
+            Map<String, Integer> distinct = new LinkedHashMap<>();
+            columns.byField.forEach((field, column) -> distinct.put(field, column.values.size()));
+            stats.put("distinct_values", distinct);
+            stats.put("dropped_fields", List.copyOf(columns.dropped));
+            stats.put("heap_bytes", columns.heapBytes() + (staging != null ? staging.heapBytes() : 0));
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Columns newColumns() {
+        return new Columns(new TimeRollups(minuteBuckets, hourBuckets, dayBuckets),
+                new LatencySketchStore(latencyMinuteBuckets, latencyHourBuckets, latencyDayBuckets), maxDictionaryValues);
+    }
+
+    private static Map<String, String> payload(LogRecord record) {
+        Map<String, String> payload = new HashMap<>();
+        record.toPayload().forEach((field, value) -> payload.put(field, String.valueOf(value)));
+        return payload;
+    }
+}
@@ -0,0 +1,75 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.models.LogBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Service
+public class LogIngestionService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogIngestionService.class);
+
+    @Autowired
+    private LogParserService logParserService;
+
+    @Autowired
+    private EmbeddingService embeddingService;
+
+    @Autowired
+    private ParallelLogParser parallelLogParser;
+
+    @Value("${qdrant.processing.chunk.size:1000}")
+    private int processingChunkSize;
+
+    // Reads the log file lazily and hands fixed-size batches to the embedding pipeline. Submitting blocks
+    // while the pipeline's bounded queues are full, so peak memory depends on batch size and queue depth.
+    public long ingest(String collection) throws Exception {
+        if (parallelLogParser.isEnabled()) {
+            Path file = logParserService.resolveLogFile();
+            if (file != null) {
+                return ingestParallel(collection, file);
+            }
+            LOGGER.warn("Parallel parsing needs a log file on disk; falling back to streaming");
+        }
+
+        long linesRead = 0;
+        try (IngestionPipeline pipeline = embeddingService.openPipeline();
+             Stream<String> lines = logParserService.streamLogLines()) {
+            Iterator<String> iterator = lines.iterator();
+            List<String> batch = new ArrayList<>(processingChunkSize);
+            while (iterator.hasNext() && !pipeline.hasFailed()) {
+                batch.add(iterator.next());
+                linesRead++;
+                if (batch.size() == processingChunkSize) {
+                    pipeline.submit(new LogBatch(collection, batch));
+                    batch = new ArrayList<>(processingChunkSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                pipeline.submit(new LogBatch(collection, batch));
+            }
+        }
+        LOGGER.info("Streamed {} log lines into collection '{}'", linesRead, collection);
+        return linesRead;
+    }
+
+    // Parses the file across all cores and submits pre-parsed batches, which skip the pipeline's parse work
+    private long ingestParallel(String collection, Path file) throws Exception {
+        ParallelLogParser.Result result;
+        try (IngestionPipeline pipeline = embeddingService.openPipeline()) {
+            result = parallelLogParser.parse(file, processingChunkSize,
+                    records -> pipeline.submit(LogBatch.ofRecords(collection, records)));
+        }
+        LOGGER.info("Parsed {} log lines ({} valid) in parallel into collection '{}'", result.lines(), result.records(), collection);
+        return result.lines();
+    }
+}
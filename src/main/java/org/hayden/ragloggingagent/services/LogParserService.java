@@ -1,24 +1,43 @@
 package org.hayden.ragloggingagent.services;
 
+import org.hayden.ragloggingagent.models.LogRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Service
 public class LogParserService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LogParserService.class);
 
+    private static final String CLASSPATH_LOG_FILE = "logfiles.log";
+
+    // Optional file system path; when blank the bundled classpath resource is used
+    @Value("${log.ingest.file.path:}")
+    private String logFilePath;
 
     // Regex for Apache/Nginx combined log format with response time at the end
     private static final Pattern LOG_PATTERN = Pattern.compile(
@@ -30,39 +49,279 @@ public class LogParserService {
                     "(?<responseTime>\\d+)"
     );
 
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
+
     public Map<String, Object> parseLogLine(String logLine) {
+        LogRecord record = parse(logLine);
+        return record == null ? null : record.toPayload();
+    }
+
+    // Single-pass tokenizer first; the regex only sees lines the fast path does not recognise
+    public LogRecord parse(String logLine) {
+        LogRecord record = parseFast(logLine);
+        return record != null ? record : parseWithRegex(logLine);
+    }
+
+    // Scans the line once, left to right, copying out only the fields it keeps.
+    // Returns null as soon as anything deviates from the expected layout.
+    LogRecord parseFast(String line) {
+        int length = line.length();
+
+        // ip, then the ident and user fields which are skipped
+        int ipEnd = nextSpace(line, 0);
+        if (ipEnd <= 0) return null;
+        int pos = skipToken(line, ipEnd + 1);
+        if (pos < 0) return null;
+        pos = skipToken(line, pos);
+        if (pos < 0 || pos >= length || line.charAt(pos) != '[') return null;
+
+        // [timestamp]
+        int timestampStart = pos + 1;
+        int timestampEnd = line.indexOf(']', timestampStart);
+        if (timestampEnd <= timestampStart || timestampEnd + 2 >= length
+                || line.charAt(timestampEnd + 1) != ' ' || line.charAt(timestampEnd + 2) != '"') return null;
+
+        // "METHOD endpoint protocol"
+        int methodStart = timestampEnd + 3;
+        int methodEnd = nextSpace(line, methodStart);
+        if (methodEnd <= methodStart) return null;
+        // The endpoint may contain quotes, as the regex's \S+ allows; only a space ends it
+        int endpointStart = methodEnd + 1;
+        int endpointEnd = endpointStart;
+        while (endpointEnd < length && line.charAt(endpointEnd) != ' ') {
+            if (Character.isWhitespace(line.charAt(endpointEnd))) return null;
+            endpointEnd++;
+        }
+        if (endpointEnd == endpointStart || endpointEnd >= length) return null;
+        int protocolEnd = endpointEnd + 1;
+        while (protocolEnd < length && line.charAt(protocolEnd) != '"') {
+            if (Character.isWhitespace(line.charAt(protocolEnd))) return null;
+            protocolEnd++;
+        }
+        if (protocolEnd == endpointEnd + 1 || protocolEnd + 1 >= length || line.charAt(protocolEnd + 1) != ' ') return null;
+
+        // status (exactly three digits) and size
+        pos = protocolEnd + 2;
+        if (pos + 4 > length || line.charAt(pos + 3) != ' ') return null;
+        int status = 0;
+        for (int i = pos; i < pos + 3; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return null;
+            status = status * 10 + digit;
+        }
+        pos += 4;
+        int sizeStart = pos;
+        long size = 0;
+        while (pos < length && line.charAt(pos) >= '0' && line.charAt(pos) <= '9' && pos - sizeStart < 18) {
+            size = size * 10 + (line.charAt(pos++) - '0');
+        }
+        if (pos == sizeStart || pos + 1 >= length || line.charAt(pos) != ' ' || line.charAt(pos + 1) != '"') return null;
+
+        // "referer" "user agent"
+        int refererStart = pos + 2;
+        int refererEnd = line.indexOf('"', refererStart);
+        if (refererEnd < 0 || refererEnd + 2 >= length
+                || line.charAt(refererEnd + 1) != ' ' || line.charAt(refererEnd + 2) != '"') return null;
+        int userAgentStart = refererEnd + 3;
+        int userAgentEnd = line.indexOf('"', userAgentStart);
+        if (userAgentEnd < 0 || userAgentEnd + 1 >= length || line.charAt(userAgentEnd + 1) != ' ') return null;
+
+        // response time
+        pos = userAgentEnd + 2;
+        int responseTimeStart = pos;
+        int responseTime = 0;
+        while (pos < length && line.charAt(pos) >= '0' && line.charAt(pos) <= '9' && pos - responseTimeStart < 9) {
+            responseTime = responseTime * 10 + (line.charAt(pos++) - '0');
+        }
+        if (pos == responseTimeStart || (pos < length && line.charAt(pos) >= '0' && line.charAt(pos) <= '9')) return null;
+
+        long timestampMillis = parseTimestampFast(line, timestampStart, timestampEnd);
+        if (timestampMillis == Long.MIN_VALUE) return null;
+
+        return new LogRecord(
+                line.substring(0, ipEnd),
+                line.substring(timestampStart, timestampEnd),
+                timestampMillis,
+                line.substring(methodStart, methodEnd),
+                line.substring(endpointStart, endpointEnd),
+                status,
+                size,
+                line.substring(refererStart, refererEnd),
+                line.substring(userAgentStart, userAgentEnd),
+                responseTime,
+                line
+        );
+    }
+
+    LogRecord parseWithRegex(String logLine) {
         Matcher matcher = LOG_PATTERN.matcher(logLine);
-        if (matcher.find()) {
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("ip", matcher.group("ip"));
-            metadata.put("timestamp", matcher.group("timestamp"));
-            metadata.put("request_type", matcher.group("method"));
-            metadata.put("endpoint", matcher.group("endpoint"));
-            metadata.put("status", matcher.group("status"));
-            metadata.put("size", matcher.group("size"));
-            metadata.put("referer", matcher.group("referer"));
-            metadata.put("user_agent", matcher.group("userAgent"));
-            metadata.put("response_time", matcher.group("responseTime"));
-            metadata.put("raw", logLine);
-            return metadata;
-        }
-        return null;
-    }
-
-    public List<String> readAllLogLines() {
-        List<String> lines = new ArrayList<>();
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream("logfiles.log");
-             BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.isBlank()) {
-                    lines.add(line);
-                }
-            }
-        } catch (Exception e) {
-            LOGGER.error("Error reading log file: {}", e.getMessage());
-        }
-        return lines;
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            String timestamp = matcher.group("timestamp");
+            return new LogRecord(
+                    matcher.group("ip"),
+                    timestamp,
+                    parseTimestamp(timestamp),
+                    matcher.group("method"),
+                    matcher.group("endpoint"),
+                    Integer.parseInt(matcher.group("status")),
+                    Long.parseLong(matcher.group("size")),
+                    matcher.group("referer"),
+                    matcher.group("userAgent"),
+                    Integer.parseInt(matcher.group("responseTime")),
+                    logLine
+            );
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Skipping log line with out-of-range numbers: {}", logLine);
+            return null;
+        }
+    }
+
+    // Epoch millis for a "dd/MMM/yyyy:HH:mm:ss Z" timestamp, or Long.MIN_VALUE when it does not parse
+    public static long parseTimestamp(String timestamp) {
+        long millis = parseTimestampFast(timestamp, 0, timestamp.length());
+        if (millis != Long.MIN_VALUE) {
+            return millis;
+        }
+        try {
+            return ZonedDateTime.parse(timestamp, TIMESTAMP_FORMAT).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    // Inverse of parseTimestamp for an offset written as in the log ("+0530")
+    public static String formatTimestamp(long millis, String offset) {
+        return Instant.ofEpochMilli(millis).atOffset(ZoneOffset.of(offset)).format(TIMESTAMP_FORMAT);
+    }
+
+    // Fixed layout "27/Dec/2037:12:00:00 +0530" (26 characters)
+    private static long parseTimestampFast(String s, int start, int end) {
+        if (end - start != 26 || s.charAt(start + 2) != '/' || s.charAt(start + 6) != '/' || s.charAt(start + 11) != ':'
+                || s.charAt(start + 14) != ':' || s.charAt(start + 17) != ':' || s.charAt(start + 20) != ' ') {
+            return Long.MIN_VALUE;
+        }
+        int day = digits(s, start, 2);
+        int month = month(s, start + 3);
+        int year = digits(s, start + 7, 4);
+        int hour = digits(s, start + 12, 2);
+        int minute = digits(s, start + 15, 2);
+        int second = digits(s, start + 18, 2);
+        char sign = s.charAt(start + 21);
+        int offsetHours = digits(s, start + 22, 2);
+        int offsetMinutes = digits(s, start + 24, 2);
+        if (month < 1 || year < 0 || day < 1 || day > lengthOfMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59 || offsetHours < 0 || offsetMinutes < 0
+                || (sign != '+' && sign != '-')) {
+            return Long.MIN_VALUE;
+        }
+        int offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (sign == '-' ? -1 : 1);
+        long epochSeconds = epochDay(year, month, day) * 86400L + hour * 3600L + minute * 60L + second - offsetSeconds;
+        return epochSeconds * 1000L;
+    }
+
+    // Days since 1970-01-01 in the proleptic Gregorian calendar
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private static int digits(String s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int month(String s, int start) {
+        char a = s.charAt(start), b = s.charAt(start + 1), c = s.charAt(start + 2);
+        return switch (a) {
+            case 'J' -> b == 'a' && c == 'n' ? 1 : b == 'u' && c == 'n' ? 6 : b == 'u' && c == 'l' ? 7 : -1;
+            case 'F' -> b == 'e' && c == 'b' ? 2 : -1;
+            case 'M' -> b == 'a' && c == 'r' ? 3 : b == 'a' && c == 'y' ? 5 : -1;
+            case 'A' -> b == 'p' && c == 'r' ? 4 : b == 'u' && c == 'g' ? 8 : -1;
+            case 'S' -> b == 'e' && c == 'p' ? 9 : -1;
+            case 'O' -> b == 'c' && c == 't' ? 10 : -1;
+            case 'N' -> b == 'o' && c == 'v' ? 11 : -1;
+            case 'D' -> b == 'e' && c == 'c' ? 12 : -1;
+            default -> -1;
+        };
+    }
+
+    // Returns the index after the next single-space-terminated non-blank token, or -1
+    private static int skipToken(String line, int start) {
+        int end = nextSpace(line, start);
+        return end <= start ? -1 : end + 1;
+    }
+
+    private static int nextSpace(String line, int start) {
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ') return i;
+            if (Character.isWhitespace(c) || c == '"') return -1;
+        }
+        return -1;
+    }
+
+    // Lazily streams non-blank lines without loading the whole file; the caller must close the stream
+    public Stream<String> streamLogLines() throws IOException {
+        BufferedReader reader = openLogReader();
+        return reader.lines()
+                .filter(line -> !line.isBlank())
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    // The log file as a file system path, or null when it is only readable as a stream (e.g. inside a jar)
+    public Path resolveLogFile() {
+        if (logFilePath != null && !logFilePath.isBlank()) {
+            return Path.of(logFilePath);
+        }
+        URL resource = getClass().getClassLoader().getResource(CLASSPATH_LOG_FILE);
+        if (resource == null || !"file".equals(resource.getProtocol())) {
+            return null;
+        }
+        try {
+            return Path.of(resource.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private BufferedReader openLogReader() throws IOException {
+        if (logFilePath != null && !logFilePath.isBlank()) {
+            Path path = Path.of(logFilePath);
+            LOGGER.info("Streaming log lines from file '{}'", path.toAbsolutePath());
+            return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        }
+        InputStream is = getClass().getClassLoader().getResourceAsStream(CLASSPATH_LOG_FILE);
+        if (is == null) {
+            throw new FileNotFoundException("Log file '" + CLASSPATH_LOG_FILE + "' not found on classpath");
+        }
+        LOGGER.info("Streaming log lines from classpath resource '{}'", CLASSPATH_LOG_FILE);
+        return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,364 @@
+package org.hayden.ragloggingagent.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Follows live log files and ingests only what was appended since the last committed byte offset. Lines are
+// gathered into micro-batches that are flushed once they are full or the oldest line has waited max.latency.ms.
+// An offset is committed only after its batch has been upserted, so a crash replays lines instead of losing them
+// (replays are harmless because point IDs are derived from the line content).
+@Service
+public class LogTailService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogTailService.class);
+
+    @Autowired
+    private EmbeddingService embeddingService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${log.tail.enabled:false}")
+    private boolean enabled;
+
+    // Comma-separated; defaults to the one-shot ingest file
+    @Value("${log.tail.paths:${log.ingest.file.path:}}")
+    private String paths;
+
+    @Value("${log.tail.offsets.path:data/tail-offsets.json}")
+    private String offsetsPath;
+
+    @Value("${log.tail.poll.interval.ms:250}")
+    private long pollIntervalMillis;
+
+    @Value("${log.tail.max.batch.lines:500}")
+    private int maxBatchLines;
+
+    @Value("${log.tail.max.latency.ms:2000}")
+    private long maxLatencyMillis;
+
+    @Value("${log.tail.retry.interval.ms:5000}")
+    private long retryIntervalMillis;
+
+    // Where to start in a file that has no stored offset yet: its first byte, or its current end
+    @Value("${log.tail.from.beginning:true}")
+    private boolean fromBeginning;
+
+    public record Offset(String fileKey, long offset) {
+    }
+
+    private final Map<String, Offset> offsets = new ConcurrentHashMap<>();
+    private boolean offsetsLoaded;
+    private final List<TailedFile> files = new ArrayList<>();
+    private volatile boolean running;
+    private Thread worker;
+    private String collection;
+
+    private static final class TailedFile {
+        final Path path;
+        FileChannel channel;
+        String fileKey;
+        // Next byte to read; the durably ingested offset lives in the offsets map
+        long readPosition;
+        ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        final List<String> lines = new ArrayList<>();
+        long firstBufferedAt;
+        long retryAt;
+
+        TailedFile(Path path) {
+            this.path = path;
+        }
+
+        void close() {
+            if (channel == null) return;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void start(String collection) {
+        if (worker != null) return;
+        if (paths == null || paths.isBlank()) {
+            LOGGER.warn("Log tailing is enabled but no files are configured (log.tail.paths)");
+            return;
+        }
+        this.collection = collection;
+        loadOffsets();
+        for (Path path : tailedPaths()) {
+            files.add(new TailedFile(path));
+        }
+        running = true;
+        worker = Thread.ofPlatform().daemon().name("log-tail").start(this::run);
+        LOGGER.info("Following {} log file(s) into collection '{}' with a maximum latency of {} ms",
+                files.size(), collection, maxLatencyMillis);
+    }
+
+    // Where the file ends right now, backed up to its last complete line. Taken before a one-shot load of the file,
+    // so everything before it is known to be ingested once the load succeeds.
+    public Offset currentEnd(Path path) throws IOException {
+        BasicFileAttributes attributes = readAttributes(path);
+        if (attributes == null) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long end = attributes.size();
+            while (end > 0) {
+                long from = Math.max(0, end - buffer.capacity());
+                buffer.clear().limit((int) (end - from));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, from + buffer.position()) < 0) break;
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') return new Offset(fileKey(attributes), from + i + 1);
+                }
+                end = from;
+            }
+            return new Offset(fileKey(attributes), 0);
+        }
+    }
+
+    // Following a file the one-shot load has just ingested starts where the load ended instead of reading it
+    // all again. A stored offset further along, or one for a different file behind the path, is left alone.
+    public synchronized void recordLoaded(Path path, Offset loaded) throws IOException {
+        if (!enabled || loaded == null || paths == null || !tailedPaths().contains(path.toAbsolutePath())) return;
+        loadOffsets();
+        String key = path.toAbsolutePath().toString();
+        Offset stored = offsets.get(key);
+        if (stored != null && (!stored.fileKey().equals(loaded.fileKey()) || stored.offset() >= loaded.offset())) return;
+        offsets.put(key, loaded);
+        saveOffsets();
+        LOGGER.info("'{}' was loaded up to byte {}; following it from there", path, loaded.offset());
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (worker == null) return;
+        worker.interrupt();
+        try {
+            worker.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        files.forEach(TailedFile::close);
+        worker = null;
+    }
+
+    private void run() {
+        while (running) {
+            boolean progressed = false;
+            for (TailedFile file : files) {
+                try {
+                    progressed |= poll(file);
+                } catch (InterruptedException | ClosedByInterruptException e) {
+                    return;
+                } catch (Exception e) {
+                    if (!running) return;
+                    LOGGER.error("Error following '{}', retrying in {} ms: {}", file.path, retryIntervalMillis, e.getMessage());
+                    file.retryAt = System.currentTimeMillis() + retryIntervalMillis;
+                }
+            }
+            if (!progressed) {
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Returns true when new bytes were read, so the loop polls again right away instead of sleeping
+    private boolean poll(TailedFile file) throws Exception {
+        if (System.currentTimeMillis() < file.retryAt) return false;
+
+        BasicFileAttributes attributes = readAttributes(file.path);
+        if (file.channel == null) {
+            if (attributes == null) return false;
+            open(file, attributes, startOffset(file, attributes));
+        }
+
+        boolean progressed = file.lines.size() < maxBatchLines && read(file, false);
+
+        // A missing path is usually the moment between renaming the old file and creating the new one,
+        // so keep reading the old handle until a different file shows up
+        if (attributes != null && !fileKey(attributes).equals(file.fileKey)) {
+            LOGGER.info("'{}' was rotated; finishing the old file before switching", file.path);
+            while (read(file, true)) {
+                if (file.lines.size() >= maxBatchLines) flush(file);
+            }
+            flush(file);
+            file.close();
+            open(file, attributes, 0);
+            commit(file, 0);
+            return true;
+        }
+        if (file.channel.size() < file.readPosition) {
+            LOGGER.info("'{}' was truncated; reading it again from the start", file.path);
+            flush(file);
+            file.readPosition = 0;
+            commit(file, 0);
+            return true;
+        }
+
+        if (!file.lines.isEmpty() && (file.lines.size() >= maxBatchLines
+                || System.currentTimeMillis() - file.firstBufferedAt >= maxLatencyMillis)) {
+            flush(file);
+        }
+        return progressed;
+    }
+
+    private long startOffset(TailedFile file, BasicFileAttributes attributes) {
+        Offset stored = offsets.get(file.path.toString());
+        if (stored == null) {
+            return fromBeginning ? 0 : attributes.size();
+        }
+        if (stored.fileKey().equals(fileKey(attributes)) && stored.offset() <= attributes.size()) {
+            return stored.offset();
+        }
+        LOGGER.info("'{}' was rotated or truncated since its offset was stored; reading it from the start", file.path);
+        return 0;
+    }
+
+    private void open(TailedFile file, BasicFileAttributes attributes, long start) throws IOException {
+        file.channel = FileChannel.open(file.path, StandardOpenOption.READ);
+        file.fileKey = fileKey(attributes);
+        file.readPosition = start;
+        LOGGER.info("Following '{}' from byte {}", file.path, start);
+    }
+
+    // Buffers the complete lines available after readPosition. With includeUnterminated the trailing bytes
+    // count as a line too, which is only right once the writer has moved on to a new file.
+    private boolean read(TailedFile file, boolean includeUnterminated) throws IOException {
+        ByteBuffer buffer = file.readBuffer;
+        buffer.clear();
+        int read = file.channel.read(buffer, file.readPosition);
+        if (read <= 0) return false;
+
+        int end = read;
+        while (end > 0 && buffer.get(end - 1) != '\n') end--;
+        if (end == 0) {
+            if (read == buffer.capacity()) {
+                // One line longer than the buffer; retry with a bigger one
+                file.readBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                return true;
+            }
+            if (!includeUnterminated) return false;
+            end = read;
+        }
+
+        byte[] bytes = buffer.array();
+        int lineStart = 0;
+        for (int i = 0; i < end; i++) {
+            if (bytes[i] != '\n' && i != end - 1) continue;
+            int lineEnd = bytes[i] == '\n' ? i : i + 1;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') lineEnd--;
+            String line = new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+            if (!line.isBlank()) {
+                if (file.lines.isEmpty()) file.firstBufferedAt = System.currentTimeMillis();
+                file.lines.add(line);
+            }
+            lineStart = i + 1;
+        }
+        file.readPosition += end;
+        return true;
+    }
+
+    private void flush(TailedFile file) throws Exception {
+        if (!file.lines.isEmpty()) {
+            long startNanos = System.nanoTime();
+            int count = file.lines.size();
+            embeddingService.processAndPublishLog(new ArrayList<>(file.lines), collection);
+            file.lines.clear();
+            LOGGER.debug("Ingested {} new lines from '{}' in {} ms", count, file.path, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+        commit(file, file.readPosition);
+    }
+
+    private void commit(TailedFile file, long offset) throws IOException {
+        Offset committed = new Offset(file.fileKey, offset);
+        if (committed.equals(offsets.put(file.path.toString(), committed))) return;
+        saveOffsets();
+    }
+
+    private List<Path> tailedPaths() {
+        List<Path> tailed = new ArrayList<>();
+        for (String path : paths.split(",")) {
+            if (!path.isBlank()) {
+                tailed.add(Path.of(path.trim()).toAbsolutePath());
+            }
+        }
+        return tailed;
+    }
+
+    private void loadOffsets() {
+        if (offsetsLoaded) return;
+        offsetsLoaded = true;
+        Path path = Path.of(offsetsPath);
+        if (!Files.exists(path)) return;
+        try {
+            offsets.putAll(objectMapper.readValue(path.toFile(), new TypeReference<Map<String, Offset>>() {
+            }));
+            LOGGER.info("Loaded tail offsets for {} file(s) from '{}'", offsets.size(), path);
+        } catch (IOException e) {
+            LOGGER.error("Could not read tail offsets from '{}', starting without them: {}", path, e.getMessage());
+        }
+    }
+
+    // Written to a temporary file, synced and renamed, so a crash leaves either the old or the new offsets.
+    // A stream rather than a FileChannel, because an interrupt during shutdown would close a channel mid-write.
+    private void saveOffsets() throws IOException {
+        Path path = Path.of(offsetsPath).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            out.write(objectMapper.writeValueAsBytes(new TreeMap<>(offsets)));
+            out.getFD().sync();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static BasicFileAttributes readAttributes(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    // Identifies the file behind the path (device and inode on Unix) so rotation can be told apart from appends
+    private static String fileKey(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : attributes.creationTime().toString();
+    }
+}
@@ -0,0 +1,192 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.models.LogRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Parses one large log file on all cores: the file is memory-mapped in newline-aligned byte ranges that are
+// parsed independently on a fork-join pool, then handed out in file order so batches are deterministic
+// no matter how many threads ran or which range finished first.
+@Service
+public class ParallelLogParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelLogParser.class);
+
+    @Autowired
+    private LogParserService logParserService;
+
+    @Value("${log.ingest.parallel.enabled:false}")
+    private boolean enabled;
+
+    // 0 means one worker per available processor
+    @Value("${log.ingest.parallel.threads:0}")
+    private int threads;
+
+    @Value("${log.ingest.parallel.range.mb:16}")
+    private int rangeMb;
+
+    @FunctionalInterface
+    public interface BatchSink {
+        void accept(List<LogRecord> records) throws Exception;
+    }
+
+    public record Result(long lines, long records) {
+    }
+
+    record Range(long start, long end) {
+    }
+
+    private record ParsedRange(List<LogRecord> records, int lines) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Emits records in file order in batches of batchSize (the last one may be smaller). Parsing runs at most
+    // two ranges per worker ahead of the sink, so memory stays bounded when the consumer is slower.
+    public Result parse(Path file, int batchSize, BatchSink sink) throws Exception {
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        long startNanos = System.nanoTime();
+        long lines = 0;
+        long emitted = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Range> ranges = split(channel, (long) rangeMb * 1024 * 1024);
+            LOGGER.info("Parsing '{}' ({} bytes) as {} ranges on {} threads", file, channel.size(), ranges.size(), parallelism);
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            Deque<ForkJoinTask<ParsedRange>> inFlight = new ArrayDeque<>();
+            try {
+                int next = 0;
+                List<LogRecord> batch = new ArrayList<>(batchSize);
+                while (next < ranges.size() || !inFlight.isEmpty()) {
+                    while (next < ranges.size() && inFlight.size() < parallelism * 2) {
+                        Range range = ranges.get(next++);
+                        inFlight.add(pool.submit(() -> parseRange(channel, range)));
+                    }
+                    ParsedRange parsed = join(inFlight.poll());
+                    lines += parsed.lines();
+                    for (LogRecord record : parsed.records()) {
+                        batch.add(record);
+                        if (batch.size() == batchSize) {
+                            sink.accept(batch);
+                            emitted += batch.size();
+                            batch = new ArrayList<>(batchSize);
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    sink.accept(batch);
+                    emitted += batch.size();
+                }
+            } finally {
+                inFlight.forEach(task -> task.cancel(true));
+                pool.shutdownNow();
+            }
+        }
+
+        double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-9);
+        LOGGER.info("Parsed {} lines into {} records from '{}' ({} lines/s)", lines, emitted, file, String.format("%.1f", lines / seconds));
+        return new Result(lines, emitted);
+    }
+
+    // Cuts the file roughly every rangeBytes, moving each cut forward to just past the next newline
+    static List<Range> split(FileChannel channel, long rangeBytes) throws IOException {
+        long size = channel.size();
+        long step = Math.max(1, Math.min(rangeBytes, Integer.MAX_VALUE));
+        List<Range> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long start = 0;
+        while (start < size) {
+            long end = start + step;
+            if (end >= size) {
+                end = size;
+            } else {
+                end = nextLineStart(channel, end, size, probe);
+                // Each range is mapped in one piece, so it has to stay below the 2 GB mapping limit
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("Log line at offset " + start + " exceeds " + Integer.MAX_VALUE + " bytes");
+                }
+            }
+            ranges.add(new Range(start, end));
+            start = end;
+        }
+        return ranges;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer probe) throws IOException {
+        // The cut is already aligned when the preceding byte ends a line
+        long pos = position - 1;
+        while (pos < size) {
+            probe.clear();
+            int read = channel.read(probe, pos);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    private ParsedRange parseRange(FileChannel channel, Range range) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range.start(), range.end() - range.start());
+        int limit = buffer.limit();
+        List<LogRecord> records = new ArrayList<>();
+        byte[] line = new byte[512];
+        int lines = 0;
+        int lineStart = 0;
+        for (int i = 0; i <= limit; i++) {
+            if (i < limit && buffer.get(i) != '\n') continue;
+
+            int lineEnd = i;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') lineEnd--;
+            int length = lineEnd - lineStart;
+            if (length > 0) {
+                if (length > line.length) {
+                    line = new byte[Math.max(length, line.length * 2)];
+                }
+                buffer.get(lineStart, line, 0, length);
+                String text = new String(line, 0, length, StandardCharsets.UTF_8);
+                if (!text.isBlank()) {
+                    lines++;
+                    LogRecord record = logParserService.parse(text);
+                    if (record != null) {
+                        records.add(record);
+                    }
+                }
+            }
+            lineStart = i + 1;
+        }
+        return new ParsedRange(records, lines);
+    }
+
+    private static ParsedRange join(ForkJoinTask<ParsedRange> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+}
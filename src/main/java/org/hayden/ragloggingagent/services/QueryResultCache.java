@@ -0,0 +1,118 @@
+package org.hayden.ragloggingagent.services;
+
+import jakarta.annotation.PostConstruct;
+import org.hayden.ragloggingagent.models.LogBatch;
+import org.hayden.ragloggingagent.utils.LruCache;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Results of the search, count and aggregation tools keyed by tool name and normalized arguments. Every
+// collection has a version that ingestion bumps, and an entry computed under an older version is never served,
+// so cached answers cannot lag behind ingested data; the TTL covers writes made by other processes.
+@Service
+public class QueryResultCache implements IngestListener {
+
+    @Value("${query.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${query.cache.max.entries:1000}")
+    private int maxEntries;
+
+    @Value("${query.cache.ttl.seconds:300}")
+    private long ttlSeconds;
+
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    private LruCache<Key, Entry> entries;
+
+    // Arguments should be records or other values with equals, e.g. a normalized LogFilter plus the other parameters
+    private record Key(String collection, String tool, Object arguments) {
+    }
+
+    private record Entry(Object value, long version, long expiresAtNanos) {
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws IOException, InterruptedException;
+    }
+
+    @PostConstruct
+    public void init() {
+        entries = new LruCache<>(maxEntries);
+    }
+
+    // Cached result for the arguments, or the loader's result, which is cached unless it is null. Callers must
+    // not modify returned values, since the same instance is handed to every later hit.
+    @SuppressWarnings("unchecked")
+    public <T> T get(String collection, String tool, Object arguments, Loader<T> loader) throws IOException, InterruptedException {
+        if (!enabled) return loader.load();
+
+        Key key = new Key(collection, tool, arguments);
+        long version = version(collection).get();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.version == version && System.nanoTime() - entry.expiresAtNanos < 0) {
+                hits.incrementAndGet();
+                return (T) entry.value;
+            }
+            stale.incrementAndGet();
+        }
+        misses.incrementAndGet();
+
+        // Read the version before loading, so data ingested during the load makes this entry stale
+        T value = loader.load();
+        if (value != null) {
+            entries.put(key, new Entry(value, version, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds)));
+        }
+        return value;
+    }
+
+    public void invalidate(String collection) {
+        version(collection).incrementAndGet();
+    }
+
+    @Override
+    public void onUpserted(LogBatch batch) {
+        invalidate(batch.collection);
+    }
+
+    // After every other listener: a query loaded between bumping the version and, say, the aggregation index taking
+    // the batch in would otherwise cache the old answer under the new version
+    @Override
+    public int getOrder() {
+        return LOWEST_PRECEDENCE;
+    }
+
+    @Tool(
+            name = "Query_Cache_Stats",
+            description = "Report hit and miss counters of the cache in front of the search, count and aggregation tools, showing how many repeated queries were answered without going to Qdrant."
+    )
+    public Map<String, Object> stats() {
+        long lookups = hits.get() + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("stale_entries_skipped", stale.get());
+        stats.put("hit_rate", lookups == 0 ? 0.0 : (double) hits.get() / lookups);
+        stats.put("entries", entries.size());
+        stats.put("ttl_seconds", ttlSeconds);
+        return stats;
+    }
+
+    private AtomicLong version(String collection) {
+        return versions.computeIfAbsent(collection, c -> new AtomicLong());
+    }
+}
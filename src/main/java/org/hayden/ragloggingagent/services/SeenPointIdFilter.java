@@ -0,0 +1,88 @@
+package org.hayden.ragloggingagent.services;
+
+import jakarta.annotation.PreDestroy;
+import org.hayden.ragloggingagent.utils.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Local record of point IDs already upserted per collection, persisted between runs. A hit means the
+// point is skipped without asking Qdrant, so the false positive rate bounds how many new lines could be missed.
+@Service
+public class SeenPointIdFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SeenPointIdFilter.class);
+
+    @Value("${ingest.dedup.bloom.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ingest.dedup.bloom.dir:data}")
+    private String directory;
+
+    @Value("${ingest.dedup.bloom.expected.ids:10000000}")
+    private long expectedIds;
+
+    @Value("${ingest.dedup.bloom.false.positive.rate:0.000001}")
+    private double falsePositiveRate;
+
+    private final Map<String, BloomFilter> filters = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> dirty = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean mightContain(String collection, long pointId) {
+        return enabled && filterFor(collection).mightContain(pointId);
+    }
+
+    public void markSeen(String collection, Collection<? extends Number> pointIds) {
+        if (!enabled || pointIds.isEmpty()) return;
+        BloomFilter filter = filterFor(collection);
+        for (Number id : pointIds) {
+            filter.put(id.longValue());
+        }
+        dirty.put(collection, true);
+    }
+
+    @PreDestroy
+    public void saveAll() {
+        for (String collection : dirty.keySet()) {
+            if (dirty.remove(collection) == null) continue;
+            try {
+                filters.get(collection).writeTo(pathFor(collection));
+                LOGGER.info("Saved seen point ID filter for collection '{}'", collection);
+            } catch (IOException e) {
+                LOGGER.error("Failed to save seen point ID filter for collection '{}': {}", collection, e.getMessage());
+            }
+        }
+    }
+
+    private BloomFilter filterFor(String collection) {
+        return filters.computeIfAbsent(collection, c -> {
+            Path path = pathFor(c);
+            if (Files.exists(path)) {
+                try {
+                    LOGGER.info("Loading seen point ID filter from '{}'", path.toAbsolutePath());
+                    return BloomFilter.readFrom(path);
+                } catch (IOException e) {
+                    LOGGER.warn("Ignoring unreadable seen point ID filter '{}': {}", path, e.getMessage());
+                }
+            }
+            return BloomFilter.create(expectedIds, falsePositiveRate);
+        });
+    }
+
+    // Versioned by ID scheme: filters written for the old 31-bit IDs would only add false positives
+    private Path pathFor(String collection) {
+        return Path.of(directory, collection + ".seen-ids.v2.bloom");
+    }
+}
@@ -0,0 +1,169 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.utils.LatencySketch;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Per-minute, per-hour and per-day counters keyed by bucket start (epoch millis, UTC), each with counts per status,
+// endpoint and request type and a latency sketch. Only the newest buckets of each interval are retained, so the
+// size depends on the retention settings rather than on the number of log lines. Not thread-safe; the
+// aggregation index guards it with its lock.
+final class TimeRollups {
+
+    static final List<String> DIMENSIONS = List.of("status", "endpoint", "request_type");
+
+    enum Interval {
+        MINUTE(60_000L), HOUR(3_600_000L), DAY(86_400_000L);
+
+        final long millis;
+
+        Interval(long millis) {
+            this.millis = millis;
+        }
+
+        static Interval parse(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+
+        // Finest interval that covers the range in at most maxBuckets buckets
+        static Interval forRange(long start, long end, int maxBuckets) {
+            for (Interval interval : values()) {
+                if ((end - start) / interval.millis < maxBuckets) return interval;
+            }
+            return DAY;
+        }
+    }
+
+    static final class Bucket {
+        long count;
+        final Map<String, Map<String, Long>> counts = new HashMap<>();
+        final LatencySketch latency = new LatencySketch();
+
+        void add(Map<String, String> payload, long responseTime) {
+            count++;
+            for (String dimension : DIMENSIONS) {
+                String value = payload.get(dimension);
+                if (value != null) {
+                    counts.computeIfAbsent(dimension, d -> new HashMap<>()).merge(value, 1L, Long::sum);
+                }
+            }
+            if (responseTime >= 0) latency.record(responseTime);
+        }
+
+        long count(String dimension, String value) {
+            if (dimension == null) return count;
+            return counts.getOrDefault(dimension, Map.of()).getOrDefault(value, 0L);
+        }
+    }
+
+    private final Map<Interval, TreeMap<Long, Bucket>> series = new EnumMap<>(Interval.class);
+    private final Map<Interval, Integer> maxBuckets = new EnumMap<>(Interval.class);
+
+    TimeRollups(int maxMinuteBuckets, int maxHourBuckets, int maxDayBuckets) {
+        maxBuckets.put(Interval.MINUTE, maxMinuteBuckets);
+        maxBuckets.put(Interval.HOUR, maxHourBuckets);
+        maxBuckets.put(Interval.DAY, maxDayBuckets);
+        for (Interval interval : Interval.values()) {
+            series.put(interval, new TreeMap<>());
+        }
+    }
+
+    void add(long timestampMillis, Map<String, String> payload) {
+        if (timestampMillis == Long.MIN_VALUE) return;
+        long responseTime = parseResponseTime(payload.get("response_time"));
+        for (Interval interval : Interval.values()) {
+            TreeMap<Long, Bucket> buckets = series.get(interval);
+            int max = maxBuckets.get(interval);
+            long start = bucketStart(timestampMillis, interval);
+            Bucket bucket = buckets.get(start);
+            if (bucket == null) {
+                // Lines older than everything retained at this interval are not rolled up into it
+                if (max <= 0 || (buckets.size() >= max && start < buckets.firstKey())) continue;
+                bucket = new Bucket();
+                buckets.put(start, bucket);
+                if (buckets.size() > max) buckets.pollFirstEntry();
+            }
+            bucket.add(payload, responseTime);
+        }
+    }
+
+    // Data range covered by the rollups, or null when they are empty
+    long[] range() {
+        TreeMap<Long, Bucket> days = series.get(Interval.DAY);
+        if (days.isEmpty()) return null;
+        return new long[]{days.firstKey(), days.lastKey() + Interval.DAY.millis - 1};
+    }
+
+    NavigableMap<Long, Bucket> buckets(Interval interval, long start, long end) {
+        return series.get(interval).subMap(bucketStart(start, interval), true, end, true);
+    }
+
+    // Whether the buckets for this interval still reach back to start
+    boolean covers(Interval interval, long start) {
+        TreeMap<Long, Bucket> buckets = series.get(interval);
+        return buckets.size() < maxBuckets.get(interval) || buckets.isEmpty() || buckets.firstKey() <= start;
+    }
+
+    Map<String, Object> histogram(Interval interval, long start, long end, String dimension, String value) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        LatencySketch total = new LatencySketch();
+        long totalCount = 0;
+        for (Map.Entry<Long, Bucket> entry : buckets(interval, start, end).entrySet()) {
+            Bucket bucket = entry.getValue();
+            long count = bucket.count(dimension, value);
+            if (count == 0) continue;
+            totalCount += count;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("bucket_start", Instant.ofEpochMilli(entry.getKey()).toString());
+            row.put("count", count);
+            if (dimension == null) {
+                putPercentiles(row, bucket.latency);
+                total.merge(bucket.latency);
+            }
+            rows.add(row);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("interval", interval.name().toLowerCase(Locale.ROOT));
+        result.put("start", Instant.ofEpochMilli(start).toString());
+        result.put("end", Instant.ofEpochMilli(end).toString());
+        result.put("complete", covers(interval, start));
+        result.put("total", totalCount);
+        if (dimension == null) {
+            putPercentiles(result, total);
+        }
+        result.put("buckets", rows);
+        return result;
+    }
+
+    static long bucketStart(long timestampMillis, Interval interval) {
+        return Math.floorDiv(timestampMillis, interval.millis) * interval.millis;
+    }
+
+    static void putPercentiles(Map<String, Object> target, LatencySketch sketch) {
+        if (sketch.count() == 0) return;
+        target.put("p50_ms", sketch.quantile(0.50));
+        target.put("p95_ms", sketch.quantile(0.95));
+        target.put("p99_ms", sketch.quantile(0.99));
+        target.put("max_ms", sketch.max());
+    }
+
+    // Milliseconds, or -1 when missing or not a number
+    static long parseResponseTime(String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
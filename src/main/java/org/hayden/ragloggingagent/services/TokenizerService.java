@@ -1,4 +1,53 @@
 package org.hayden.ragloggingagent.services;
 
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Local BPE tokenizer using cl100k_base, the encoding behind text-embedding-3-small,
+// so request sizes can be computed before anything is sent to the API
+@Service
 public class TokenizerService {
+
+    private final Encoding encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    // A group of input positions that fit in one request, together with their total token count
+    public record TokenBatch(List<Integer> indexes, int tokens) {
+    }
+
+    public int countTokens(String text) {
+        return encoding.countTokensOrdinary(text);
+    }
+
+    public String truncate(String text, int maxTokens) {
+        EncodingResult result = encoding.encodeOrdinary(text, maxTokens);
+        return result.isTruncated() ? encoding.decode(result.getTokens()) : text;
+    }
+
+    // Greedily fills each request up to the token and input ceilings, keeping the inputs in order
+    public List<TokenBatch> pack(List<Integer> tokenCounts, int maxTokensPerRequest, int maxInputsPerRequest) {
+        List<TokenBatch> batches = new ArrayList<>();
+        List<Integer> current = new ArrayList<>();
+        int currentTokens = 0;
+
+        for (int i = 0; i < tokenCounts.size(); i++) {
+            int tokens = tokenCounts.get(i);
+            if (!current.isEmpty() && (currentTokens + tokens > maxTokensPerRequest || current.size() >= maxInputsPerRequest)) {
+                batches.add(new TokenBatch(current, currentTokens));
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(i);
+            currentTokens += tokens;
+        }
+        if (!current.isEmpty()) {
+            batches.add(new TokenBatch(current, currentTokens));
+        }
+        return batches;
+    }
 }
@@ -44,4 +44,9 @@ public class DateFormatUtil {
         OffsetDateTime odt = OffsetDateTime.parse(iso);
         return LOG_FORMAT.format(odt);
     }
-}
\ No newline at end of file
+
+    // Epoch millis of an ISO 8601 or log format timestamp
+    public static long toEpochMillis(String input) {
+        return OffsetDateTime.parse(toIso8601(input)).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,139 @@
+package org.hayden.ragloggingagent.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Append-only, memory-mapped file of (32-byte key, float32 vector) records that survives restarts.
+// The file is mapped in fixed-size segments and a record never spans two segments. Each record is
+// [key:32][dim:int][dim x float]; the dim is written last, so an interrupted write reads back as end-of-data.
+public class MappedVectorStore implements AutoCloseable {
+
+    private static final int KEY_BYTES = 32;
+    private static final int HEADER_BYTES = KEY_BYTES + Integer.BYTES;
+    private static final int SKIP_TO_NEXT_SEGMENT = -1;
+
+    private final FileChannel channel;
+    private final int segmentBytes;
+    private final long maxBytes;
+    // Copy-on-write so lock-free readers can see segments appended by a writer
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    // First 8 key bytes -> record offset; the full key is checked on read
+    private final Map<Long, Long> index = new ConcurrentHashMap<>();
+    private long writeOffset;
+
+    public MappedVectorStore(Path path, int segmentBytes, long maxBytes) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        rebuildIndex();
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public float[] get(byte[] key) {
+        Long offset = index.get(prefix(key));
+        if (offset == null) return null;
+
+        ByteBuffer segment = segments.get((int) (offset / segmentBytes));
+        int position = (int) (offset % segmentBytes);
+        for (int i = 0; i < KEY_BYTES; i++) {
+            if (segment.get(position + i) != key[i]) return null;
+        }
+        int dim = segment.getInt(position + KEY_BYTES);
+        float[] vector = new float[dim];
+        int floatsAt = position + HEADER_BYTES;
+        for (int i = 0; i < dim; i++) {
+            vector[i] = segment.getFloat(floatsAt + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    // Returns false once the store has reached its size limit
+    public synchronized boolean put(byte[] key, float[] vector) throws IOException {
+        if (index.containsKey(prefix(key))) return true;
+
+        int recordBytes = HEADER_BYTES + vector.length * Float.BYTES;
+        if (recordBytes > segmentBytes) {
+            throw new IllegalArgumentException("Vector of " + vector.length + " dimensions exceeds the segment size");
+        }
+        int position = (int) (writeOffset % segmentBytes);
+        if (position + recordBytes > segmentBytes) {
+            // Not enough room left in this segment: mark the gap and continue at the next one
+            if (position + HEADER_BYTES <= segmentBytes) {
+                segment(writeOffset).putInt(position + KEY_BYTES, SKIP_TO_NEXT_SEGMENT);
+            }
+            writeOffset += segmentBytes - position;
+            position = 0;
+        }
+        if (writeOffset + recordBytes > maxBytes) {
+            return false;
+        }
+
+        MappedByteBuffer segment = segment(writeOffset);
+        segment.put(position, key);
+        int floatsAt = position + HEADER_BYTES;
+        for (int i = 0; i < vector.length; i++) {
+            segment.putFloat(floatsAt + i * Float.BYTES, vector[i]);
+        }
+        segment.putInt(position + KEY_BYTES, vector.length);
+
+        index.put(prefix(key), writeOffset);
+        writeOffset += recordBytes;
+        return true;
+    }
+
+    public synchronized void force() {
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void rebuildIndex() throws IOException {
+        long fileSize = channel.size();
+        long offset = 0;
+        byte[] key = new byte[KEY_BYTES];
+        while (offset < fileSize) {
+            MappedByteBuffer segment = segment(offset);
+            int position = (int) (offset % segmentBytes);
+            int dim = position + HEADER_BYTES <= segmentBytes ? segment.getInt(position + KEY_BYTES) : SKIP_TO_NEXT_SEGMENT;
+            if (dim == SKIP_TO_NEXT_SEGMENT) {
+                offset += segmentBytes - position;
+                continue;
+            }
+            if (dim <= 0) break;
+            segment.get(position, key);
+            index.put(prefix(key), offset);
+            offset += HEADER_BYTES + (long) dim * Float.BYTES;
+        }
+        writeOffset = offset;
+    }
+
+    private MappedByteBuffer segment(long offset) throws IOException {
+        int segmentIndex = (int) (offset / segmentBytes);
+        while (segments.size() <= segmentIndex) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * segmentBytes, segmentBytes));
+        }
+        return segments.get(segmentIndex);
+    }
+
+    private static long prefix(byte[] key) {
+        return ByteBuffer.wrap(key, 0, Long.BYTES).getLong();
+    }
+}
@@ -0,0 +1,31 @@
+package org.hayden.ragloggingagent.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Point IDs derived from the raw log line: the first 8 bytes of its SHA-256 with the sign bit cleared. That is a
+// 63-bit ID space, where tens of millions of lines collide with odds around 1e-4 instead of almost surely as in
+// 31 bits, and the ID stays a non-negative long, so JSON, gRPC and ID-range scrolls need no unsigned handling.
+public final class PointIds {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private PointIds() {
+    }
+
+    public static long of(String rawLine) {
+        byte[] hash = SHA_256.get().digest(rawLine.getBytes(StandardCharsets.UTF_8));
+        long id = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            id = (id << 8) | (hash[i] & 0xff);
+        }
+        return id & Long.MAX_VALUE;
+    }
+}
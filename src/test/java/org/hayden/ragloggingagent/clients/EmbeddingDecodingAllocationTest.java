@@ -0,0 +1,115 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Allocation benchmark: decoding a base64 embeddings response into float[] versus the previous path of
+// parsing JSON number arrays into List<Double> and unboxing them into double[]
+class EmbeddingDecodingAllocationTest {
+
+    private static final int VECTORS = 100;
+    private static final int DIMENSIONS = 1536;
+    private static final int ROUNDS = 20;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void base64FloatDecodingAllocatesLessPerVector() throws Exception {
+        float[][] expected = randomVectors();
+        byte[] base64Response = response(expected, true);
+        byte[] jsonResponse = response(expected, false);
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(base64Response)) {
+            float[][] decoded = OpenAIClient.parseEmbeddings(parser, VECTORS);
+            for (int i = 0; i < VECTORS; i++) {
+                assertArrayEquals(expected[i], decoded[i]);
+            }
+        }
+
+        long boxedBytes = allocatedBytesPerVector(() -> decodeBoxed(jsonResponse));
+        long floatBytes = allocatedBytesPerVector(() -> {
+            try (JsonParser parser = objectMapper.getFactory().createParser(base64Response)) {
+                OpenAIClient.parseEmbeddings(parser, VECTORS);
+            }
+        });
+
+        assertTrue(floatBytes * 3 < boxedBytes,
+                "float32 decoding should allocate under a third of the boxed path per vector, was " + floatBytes + " vs " + boxedBytes + " bytes");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void decodeBoxed(byte[] jsonResponse) throws Exception {
+        Map<String, Object> response = objectMapper.readValue(jsonResponse, Map.class);
+        List<Map<String, Object>> data = (List<Map<String, Object>>) response.get("data");
+        List<double[]> vectors = new ArrayList<>();
+        for (Map<String, Object> item : data) {
+            List<Double> embedding = ((List<Number>) item.get("embedding")).stream().map(Number::doubleValue).toList();
+            vectors.add(embedding.stream().mapToDouble(Double::doubleValue).toArray());
+        }
+    }
+
+    private interface Decode {
+        void run() throws Exception;
+    }
+
+    private static long allocatedBytesPerVector(Decode decode) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        for (int i = 0; i < ROUNDS; i++) {
+            decode.run();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            decode.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / ((long) ROUNDS * VECTORS);
+    }
+
+    private static float[][] randomVectors() {
+        Random random = new Random(42);
+        float[][] vectors = new float[VECTORS][DIMENSIONS];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = (float) random.nextGaussian() / 40f;
+            }
+        }
+        return vectors;
+    }
+
+    private static byte[] response(float[][] vectors, boolean base64) {
+        StringBuilder json = new StringBuilder("{\"object\":\"list\",\"data\":[");
+        for (int v = 0; v < vectors.length; v++) {
+            if (v > 0) json.append(',');
+            json.append("{\"object\":\"embedding\",\"index\":").append(v).append(",\"embedding\":");
+            if (base64) {
+                ByteBuffer bytes = ByteBuffer.allocate(vectors[v].length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                bytes.asFloatBuffer().put(vectors[v]);
+                json.append('"').append(Base64.getEncoder().encodeToString(bytes.array())).append('"');
+            } else {
+                json.append('[');
+                for (int i = 0; i < vectors[v].length; i++) {
+                    if (i > 0) json.append(',');
+                    json.append(vectors[v][i]);
+                }
+                json.append(']');
+            }
+            json.append('}');
+        }
+        json.append("],\"model\":\"text-embedding-3-small\",\"usage\":{\"prompt_tokens\":1,\"total_tokens\":1}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
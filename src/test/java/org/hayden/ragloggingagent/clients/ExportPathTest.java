@@ -0,0 +1,28 @@
+package org.hayden.ragloggingagent.clients;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExportPathTest {
+
+    @Test
+    void exportsStayInsideTheExportDirectory() {
+        QdrantClient client = new QdrantClient();
+        ReflectionTestUtils.setField(client, "exportDirectory", "data/exports");
+        Path root = Path.of("data/exports").toAbsolutePath().normalize();
+
+        assertEquals(root.resolve("logs.ndjson"), client.exportPath("logs.ndjson"));
+        assertEquals(root.resolve("daily/logs.ndjson"), client.exportPath("daily/./logs.ndjson"));
+        assertEquals(root.resolve("logs.ndjson"), client.exportPath("daily/../logs.ndjson"));
+
+        assertThrows(IllegalArgumentException.class, () -> client.exportPath("/etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> client.exportPath("../application.properties"));
+        assertThrows(IllegalArgumentException.class, () -> client.exportPath("daily/../../x.ndjson"));
+        assertThrows(IllegalArgumentException.class, () -> client.exportPath("."));
+    }
+}
@@ -0,0 +1,132 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.hayden.ragloggingagent.resilience.ResilienceRegistry;
+import org.hayden.ragloggingagent.services.EmbeddingCache;
+import org.hayden.ragloggingagent.services.TokenizerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OpenAIClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Inputs of each embeddings request the stand-in API received
+    private final List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private HttpServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) server.stop(0);
+    }
+
+    @Test
+    void shortenKeepsTheLeadingDimensionsAtUnitLength() {
+        float[] vector = {3f, 4f, 12f};
+        assertArrayEquals(new float[]{0.6f, 0.8f}, OpenAIClient.shorten(vector, 2), 1e-6f);
+        // The input is left as it was
+        assertArrayEquals(new float[]{3f, 4f, 12f}, vector);
+
+        float[] full = OpenAIClient.shorten(vector, 3);
+        assertEquals(1.0, Math.sqrt(full[0] * full[0] + full[1] * full[1] + full[2] * full[2]), 1e-6);
+        assertArrayEquals(new float[]{3f / 13, 4f / 13, 12f / 13}, full, 1e-6f);
+
+        // A prefix of zeros has no direction to keep
+        assertArrayEquals(new float[]{0f, 0f}, OpenAIClient.shorten(new float[]{0f, 0f, 1f}, 2));
+    }
+
+    @Test
+    void onlyCacheMissesAreSentToTheApi() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "memoryMb", 1L);
+        ReflectionTestUtils.setField(cache, "diskPath", "");
+        cache.init();
+        OpenAIClient client = client(cache);
+
+        assertEmbedded(List.of("a", "bb", "a"), client.embed(List.of("a", "bb", "a"), 2));
+        assertEmbedded(List.of("bb", "ccc", "ccc"), client.embed(List.of("bb", "ccc", "ccc"), 2));
+        assertEmbedded(List.of("ccc", "a", "bb"), client.embed(List.of("ccc", "a", "bb"), 2));
+        // The same text at another size is a different vector
+        client.embed(List.of("a"), 3);
+
+        assertEquals(List.of(List.of("a", "bb"), List.of("ccc"), List.of("a")), requests);
+        assertEquals(4L, cache.stats().get("memory_hits"));
+        assertEquals(4L, cache.stats().get("misses"));
+    }
+
+    @Test
+    void requestsAreSplitAtTheCeilingsAndVectorsKeepInputOrder() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache();
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        OpenAIClient client = client(cache);
+        String longLine = "GET /api/v1/orders 200 ".repeat(20);
+        ReflectionTestUtils.setField(client, "maxInputsPerRequest", 3);
+        ReflectionTestUtils.setField(client, "maxTokensPerRequest", new TokenizerService().countTokens(longLine));
+
+        List<String> inputs = List.of("a", "b", longLine, "c", "d", "e", "f");
+        assertEmbedded(inputs, client.embedLogMessages(inputs));
+        assertEquals(List.of(List.of("a", "b"), List.of(longLine), List.of("c", "d", "e"), List.of("f")), requests);
+    }
+
+    // Client against a stand-in embeddings API that answers each input with {its length, 1}
+    private OpenAIClient client(EmbeddingCache cache) throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/embeddings", exchange -> {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            List<String> inputs = new ArrayList<>();
+            body.get("input").forEach(input -> inputs.add(input.asText()));
+            requests.add(inputs);
+
+            StringBuilder json = new StringBuilder("{\"data\":[");
+            for (int i = 0; i < inputs.size(); i++) {
+                if (i > 0) json.append(',');
+                json.append("{\"index\":").append(i).append(",\"embedding\":[").append(inputs.get(i).length()).append(",1]}");
+            }
+            byte[] response = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+
+        ResilienceRegistry resilience = new ResilienceRegistry();
+        ReflectionTestUtils.setField(resilience, "openAiRequestsPerSecond", 100_000.0);
+        ReflectionTestUtils.setField(resilience, "minRequestsPerSecond", 1.0);
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 1);
+        ReflectionTestUtils.setField(resilience, "failureThreshold", 10);
+        ReflectionTestUtils.setField(resilience, "openSeconds", 1L);
+
+        OpenAIClient client = new OpenAIClient(HttpClient.newHttpClient(), objectMapper, cache, new TokenizerService(), resilience);
+        ReflectionTestUtils.setField(client, "openAiApiKey", "test");
+        ReflectionTestUtils.setField(client, "openAiUrl", "http://localhost:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(client, "maxInputsPerRequest", 2048);
+        ReflectionTestUtils.setField(client, "maxTokensPerRequest", 300_000);
+        ReflectionTestUtils.setField(client, "maxTokensPerInput", 8191);
+        ReflectionTestUtils.setField(client, "tokensPerMinute", 1_000_000L);
+        ReflectionTestUtils.setField(client, "queryCacheEntries", 16);
+        client.init();
+        return client;
+    }
+
+    private static void assertEmbedded(List<String> inputs, List<float[]> vectors) {
+        assertEquals(inputs.size(), vectors.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            assertArrayEquals(new float[]{inputs.get(i).length(), 1f}, vectors.get(i), inputs.get(i));
+        }
+    }
+}
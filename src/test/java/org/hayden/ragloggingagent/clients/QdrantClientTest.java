@@ -0,0 +1,418 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.hayden.ragloggingagent.models.LogFilter;
+import org.hayden.ragloggingagent.models.QdrantHit;
+import org.hayden.ragloggingagent.models.QdrantPage;
+import org.hayden.ragloggingagent.models.QdrantPoint;
+import org.hayden.ragloggingagent.models.QdrantPointPage;
+import org.hayden.ragloggingagent.resilience.ResilienceRegistry;
+import org.hayden.ragloggingagent.services.LogAggregationIndex;
+import org.hayden.ragloggingagent.services.QueryResultCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// QdrantClient against a local stand-in for the Qdrant REST API. Each test answers requests through `qdrant`,
+// which gets "METHOD /path?query" and the request body and returns the response body, or null for a 404; every
+// request is recorded in `requests`.
+class QdrantClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> scrollLimits = Collections.synchronizedList(new ArrayList<>());
+    private volatile BiFunction<String, String, String> qdrant = (request, body) -> "{\"result\":{}}";
+
+    private HttpServer server;
+    private QdrantClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String request = exchange.getRequestMethod() + " " + exchange.getRequestURI();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            requests.add(request + " " + body);
+            String answer = qdrant.apply(request, body);
+            byte[] response = (answer != null ? answer : "{\"status\":{\"error\":\"Not found\"}}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(answer != null ? 200 : 404, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+        String url = "http://localhost:" + server.getAddress().getPort();
+
+        ResilienceRegistry resilience = new ResilienceRegistry();
+        ReflectionTestUtils.setField(resilience, "qdrantRequestsPerSecond", 100_000.0);
+        ReflectionTestUtils.setField(resilience, "minRequestsPerSecond", 1.0);
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 1);
+        ReflectionTestUtils.setField(resilience, "failureThreshold", 10);
+        ReflectionTestUtils.setField(resilience, "openSeconds", 1L);
+
+        QdrantRestTransport transport = new QdrantRestTransport();
+        ReflectionTestUtils.setField(transport, "client", HttpClient.newHttpClient());
+        ReflectionTestUtils.setField(transport, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(transport, "resilience", resilience);
+        ReflectionTestUtils.setField(transport, "qdrantUrl", url);
+        ReflectionTestUtils.setField(transport, "requestTimeoutSeconds", 10L);
+
+        client = new QdrantClient();
+        ReflectionTestUtils.setField(client, "client", HttpClient.newHttpClient());
+        ReflectionTestUtils.setField(client, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(client, "resilience", resilience);
+        ReflectionTestUtils.setField(client, "transport", transport);
+        ReflectionTestUtils.setField(client, "qdrantUrl", url);
+        ReflectionTestUtils.setField(client, "collectionName", "logs");
+        ReflectionTestUtils.setField(client, "bulkLoadIndexingThreshold", 10000L);
+        ReflectionTestUtils.setField(client, "bulkLoadPollSeconds", 0L);
+        ReflectionTestUtils.setField(client, "bulkLoadGreenPolls", 3);
+        ReflectionTestUtils.setField(client, "bulkLoadReadyTimeoutMinutes", 1L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void bulkLoadIsNotReadyOnTheGreenBeforeIndexingStarts() throws Exception {
+        // The optimizer picks the restored threshold up only after the first poll
+        AtomicInteger polls = new AtomicInteger();
+        qdrant = (request, body) -> {
+            if (!request.equals("GET /collections/logs")) return "{\"result\":{}}";
+            int poll = polls.getAndIncrement();
+            String status = poll == 0 || poll >= 3 ? "green" : "yellow";
+            return collection(status, 1000, poll * 400L, 20000);
+        };
+        client.beginBulkLoad("logs");
+        polls.set(0);
+        assertTrue(client.endBulkLoad("logs"));
+        assertEquals(4, polls.get());
+        assertTrue(requests.contains("PATCH /collections/logs {\"optimizers_config\":{\"indexing_threshold\":20000}}"), requests.toString());
+    }
+
+    @Test
+    void bulkLoadIsReadyAfterSteadyGreenWhenSegmentsStayUnindexed() throws Exception {
+        // Segments under the threshold are never indexed, so indexed_vectors_count does not catch up
+        AtomicInteger polls = new AtomicInteger();
+        qdrant = (request, body) -> {
+            if (!request.equals("GET /collections/logs")) return "{\"result\":{}}";
+            polls.incrementAndGet();
+            return collection("green", 1000, 0, 20000);
+        };
+        client.beginBulkLoad("logs");
+        polls.set(0);
+        assertTrue(client.endBulkLoad("logs"));
+        assertEquals(3, polls.get());
+    }
+
+    @Test
+    void restoresIndexingLeftOffByAnInterruptedBulkLoad() throws Exception {
+        qdrant = (request, body) -> switch (request) {
+            case "GET /collections" ->
+                    "{\"result\":{\"collections\":[{\"name\":\"logs_v1\"},{\"name\":\"logs_256d_1700000000\"},{\"name\":\"other\"}]}}";
+            case "GET /collections/logs_v1" -> collection("green", 10, 10, 20000);
+            case "GET /collections/logs_256d_1700000000", "GET /collections/other" -> collection("green", 10, 0, 0);
+            default -> "{\"result\":{}}";
+        };
+        client.restoreIndexing();
+        List<String> patches = requests.stream().filter(r -> r.startsWith("PATCH")).toList();
+        assertEquals(List.of("PATCH /collections/logs_256d_1700000000 {\"optimizers_config\":{\"indexing_threshold\":10000}}"), patches);
+    }
+
+    @Test
+    void facetCutOffAtTheLimitFallsBackToScrolling() throws Exception {
+        List<String> stored = List.of("/a", "/a", "/a", "/b", "/b", "/c", "/d");
+        StubTransport transport = aggregationSetUp(stored);
+        transport.facet = Map.of("/a", 3L, "/b", 2L, "/c", 1L);
+        ReflectionTestUtils.setField(client, "facetEnabled", true);
+        ReflectionTestUtils.setField(client, "facetLimit", 3);
+
+        assertEquals(Map.of("/a", 3, "/b", 2, "/c", 1, "/d", 1), aggregateEndpoints());
+        assertEquals(1, transport.facets.get());
+        assertEquals(List.of(1000), scrollLimits);
+    }
+
+    @Test
+    void fanOutThatMissesValuesFallsBackToScrolling() throws Exception {
+        // The 4-point sample sees /a and /b only, so their counts add up to 9 of 10
+        List<String> stored = List.of("/a", "/b", "/a", "/b", "/a", "/a", "/a", "/a", "/b", "/c");
+        StubTransport transport = aggregationSetUp(stored);
+        ReflectionTestUtils.setField(client, "scrollBelowPoints", 5L);
+
+        assertEquals(Map.of("/a", 6, "/b", 3, "/c", 1), aggregateEndpoints());
+        assertEquals(List.of("/a", "/b"), transport.countedValues.stream().sorted().toList());
+        assertEquals(List.of(4, 1000), scrollLimits);
+    }
+
+    @Test
+    void scrollBelowPointsChoosesBetweenScrollAndFanOut() throws Exception {
+        List<String> stored = List.of("/a", "/b", "/a", "/a", "/b", "/a");
+        StubTransport transport = aggregationSetUp(stored);
+
+        // Six points are not above a threshold of six: one scroll, no per-value counts
+        ReflectionTestUtils.setField(client, "scrollBelowPoints", 6L);
+        assertEquals(Map.of("/a", 4, "/b", 2), aggregateEndpoints());
+        assertTrue(transport.countedValues.isEmpty());
+        assertEquals(List.of(1000), scrollLimits);
+
+        // Above it, the sample plus one count per value answers without the full scroll
+        scrollLimits.clear();
+        ReflectionTestUtils.setField(client, "scrollBelowPoints", 5L);
+        assertEquals(Map.of("/a", 4, "/b", 2), aggregateEndpoints());
+        assertEquals(2, transport.countedValues.size());
+        assertEquals(List.of(4), scrollLimits);
+    }
+
+    @Test
+    void failedExportLeavesNoFileBehind(@TempDir Path exports) throws Exception {
+        // The second page fails once, after the first page may already be on disk
+        AtomicInteger failures = new AtomicInteger(1);
+        qdrant = (request, body) -> {
+            if (!request.equals("POST /collections/logs/points/scroll")) return "{\"result\":{}}";
+            boolean secondPage = body.contains("\"offset\":3");
+            if (secondPage && failures.getAndDecrement() > 0) return null;
+            return secondPage
+                    ? "{\"result\":{\"points\":[{\"id\":3,\"payload\":{\"raw\":\"c\"}}],\"next_page_offset\":null}}"
+                    : "{\"result\":{\"points\":[{\"id\":1,\"payload\":{\"raw\":\"a\"}},"
+                    + "{\"id\":2,\"payload\":{\"raw\":\"b\"}}],\"next_page_offset\":3}}";
+        };
+        ReflectionTestUtils.setField(client, "exportDirectory", exports.toString());
+        ReflectionTestUtils.setField(client, "exportPartitions", 1);
+        ReflectionTestUtils.setField(client, "scrollPageSize", 2);
+
+        assertThrows(IOException.class, () -> export("logs.ndjson"));
+        assertFalse(Files.exists(exports.resolve("logs.ndjson")));
+
+        assertEquals(3L, export("logs.ndjson").get("points"));
+        assertEquals(3, Files.readAllLines(exports.resolve("logs.ndjson")).size());
+    }
+
+    @Test
+    void copiedAndMirroredPointsAreFittedAndTheAliasSwitchesAtomically() throws Exception {
+        migrationSetUp();
+        qdrant = (request, body) -> request.equals("POST /collections/logs/points/scroll")
+                ? "{\"result\":{\"points\":["
+                + "{\"id\":1,\"payload\":{\"raw\":\"a\"},\"vector\":[3.0,4.0,0.0,0.0]},"
+                + "{\"id\":2,\"payload\":{\"raw\":\"b\"},\"vector\":[0.0,2.0,0.0,0.0]}"
+                + "],\"next_page_offset\":null}}"
+                : "{\"result\":{}}";
+
+        // The copy holds the shortened, renormalized vectors
+        QdrantPointPage page = client.scrollPointsWithVectors(null);
+        assertNull(page.nextOffset());
+        client.copyPoints("logs_2d", page.points(), 2);
+        JsonNode copied = objectMapper.readTree(body("PUT /collections/logs_2d/points"));
+        assertEquals(List.of(1L, 2L), List.of(copied.at("/points/0/id").asLong(), copied.at("/points/1/id").asLong()));
+        assertArrayEquals(new float[]{0.6f, 0.8f}, objectMapper.convertValue(copied.at("/points/0/vector"), float[].class), 1e-6f);
+        assertArrayEquals(new float[]{0f, 1f}, objectMapper.convertValue(copied.at("/points/1/vector"), float[].class), 1e-6f);
+
+        // While mirroring, an upsert to the alias is written to both collections
+        client.mirrorUpserts("logs", "logs_2d", 2);
+        requests.clear();
+        client.insertPointsInBulk("logs", List.of(point(3, new float[]{3f, 4f, 0f, 0f}, "c")));
+        assertEquals(1, requests.stream().filter(r -> r.startsWith("PUT /collections/logs/points")).count(), requests.toString());
+        assertArrayEquals(new float[]{0.6f, 0.8f}, objectMapper.convertValue(
+                objectMapper.readTree(body("PUT /collections/logs_2d/points")).at("/points/0/vector"), float[].class), 1e-6f);
+
+        // One atomic alias update that ends the mirroring; the source collection is never deleted
+        client.switchAlias("logs", "logs_2d", 2);
+        JsonNode actions = objectMapper.readTree(body("POST /collections/aliases")).path("actions");
+        assertEquals("logs", actions.at("/0/delete_alias/alias_name").asText());
+        assertEquals("logs_2d", actions.at("/1/create_alias/collection_name").asText());
+        assertEquals("logs", actions.at("/1/create_alias/alias_name").asText());
+        assertTrue(requests.stream().noneMatch(r -> r.startsWith("DELETE")), requests.toString());
+
+        requests.clear();
+        client.insertPointsInBulk("logs", List.of(point(4, new float[]{3f, 4f, 0f, 0f}, "d")));
+        assertEquals(1, requests.size(), requests.toString());
+        assertArrayEquals(new float[]{0.6f, 0.8f}, objectMapper.convertValue(
+                objectMapper.readTree(body("PUT /collections/logs/points")).at("/points/0/vector"), float[].class), 1e-6f);
+    }
+
+    @Test
+    void newCollectionsAreCreatedBehindAnAlias() throws Exception {
+        migrationSetUp();
+        qdrant = (request, body) -> request.equals("GET /collections/logs_v1") ? null : "{\"result\":{}}";
+
+        client.createAliasedCollection("logs");
+        assertTrue(requests.stream().anyMatch(r -> r.startsWith("PUT /collections/logs_v1 ")), requests.toString());
+        JsonNode actions = objectMapper.readTree(body("POST /collections/aliases")).path("actions");
+        assertEquals("logs_v1", actions.at("/0/create_alias/collection_name").asText());
+        assertEquals("logs", actions.at("/0/create_alias/alias_name").asText());
+    }
+
+    @Test
+    void fitVectorsShortensLongVectorsAndReEmbedsShortOnes() throws Exception {
+        OpenAIClient openAIClient = migrationSetUp();
+        when(openAIClient.embed(List.of("short line"), 2)).thenReturn(List.of(new float[]{1f, 0f}));
+
+        float[] fitting = {0.6f, 0.8f};
+        List<QdrantPoint> fitted = ReflectionTestUtils.invokeMethod(client, "fitVectors", List.of(
+                point(1, new float[]{3f, 4f, 12f}, "long line"),
+                point(2, new float[]{0.5f}, "short line"),
+                point(3, fitting, "fitting line")), 2);
+
+        assertArrayEquals(new float[]{0.6f, 0.8f}, fitted.get(0).vector, 1e-6f);
+        assertArrayEquals(new float[]{1f, 0f}, fitted.get(1).vector);
+        assertSame(fitting, fitted.get(2).vector);
+        assertEquals(List.of(1L, 2L, 3L), fitted.stream().map(p -> p.id).toList());
+    }
+
+    private OpenAIClient migrationSetUp() {
+        OpenAIClient openAIClient = mock(OpenAIClient.class);
+        QueryResultCache cache = new QueryResultCache();
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        ReflectionTestUtils.setField(client, "openAIClient", openAIClient);
+        ReflectionTestUtils.setField(client, "queryCache", cache);
+        ReflectionTestUtils.setField(client, "upsertSplitSize", 250);
+        ReflectionTestUtils.setField(client, "vectorScrollPageSize", 256);
+        ReflectionTestUtils.setField(client, "hnswM", 16);
+        ReflectionTestUtils.setField(client, "hnswEfConstruct", 100);
+        ReflectionTestUtils.setField(client, "quantization", "none");
+        return openAIClient;
+    }
+
+    private static QdrantPoint point(long id, float[] vector, String raw) {
+        QdrantPoint point = new QdrantPoint();
+        point.id = id;
+        point.vector = vector;
+        point.payload = Map.of("raw", raw);
+        return point;
+    }
+
+    // Body of the first recorded request whose method and path start with the prefix
+    private String body(String prefix) {
+        synchronized (requests) {
+            for (String request : requests) {
+                if (request.startsWith(prefix)) return request.substring(request.indexOf(' ', request.indexOf(' ') + 1) + 1);
+            }
+        }
+        throw new AssertionError("No request " + prefix + " in " + requests);
+    }
+
+    // Qdrant holding the given endpoint values, with a payload index on endpoint. Scrolls return the first `limit`
+    // points in one page. Facet is off and the fan-out threshold is out of reach unless a test changes them.
+    private StubTransport aggregationSetUp(List<String> stored) throws Exception {
+        qdrant = (request, body) -> {
+            if (request.equals("GET /collections/logs")) {
+                return "{\"result\":{\"status\":\"green\",\"payload_schema\":{\"endpoint\":{\"data_type\":\"keyword\"}}}}";
+            }
+            if (request.equals("POST /collections/logs/points/scroll")) {
+                try {
+                    int limit = objectMapper.readTree(body).path("limit").asInt();
+                    scrollLimits.add(limit);
+                    List<Map<String, Object>> points = new ArrayList<>();
+                    for (int i = 0; i < Math.min(limit, stored.size()); i++) {
+                        points.add(Map.of("id", i, "payload", Map.of("endpoint", stored.get(i))));
+                    }
+                    Map<String, Object> page = new HashMap<>();
+                    page.put("points", points);
+                    page.put("next_page_offset", null);
+                    return objectMapper.writeValueAsString(Map.of("result", page));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return "{\"result\":{}}";
+        };
+        StubTransport transport = new StubTransport(stored);
+        QueryResultCache cache = new QueryResultCache();
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        ReflectionTestUtils.setField(client, "transport", transport);
+        ReflectionTestUtils.setField(client, "queryCache", cache);
+        ReflectionTestUtils.setField(client, "aggregationIndex", new LogAggregationIndex());
+        ReflectionTestUtils.setField(client, "facetEnabled", false);
+        ReflectionTestUtils.setField(client, "facetLimit", 100);
+        ReflectionTestUtils.setField(client, "scrollBelowPoints", 1_000_000L);
+        ReflectionTestUtils.setField(client, "fanOutMaxValues", 10);
+        ReflectionTestUtils.setField(client, "fanOutParallelism", 2);
+        ReflectionTestUtils.setField(client, "fanOutSamplePoints", 4);
+        ReflectionTestUtils.setField(client, "scrollPageSize", 1000);
+        return transport;
+    }
+
+    private Map<String, Object> export(String name) throws Exception {
+        return client.exportAllPoints(name, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    private Map<String, Integer> aggregateEndpoints() throws Exception {
+        return client.aggregateLogs("endpoint", null, null, null, null, null, null, null, null, null, null);
+    }
+
+    // Counts and facets over an in-memory list of endpoint values; the planner's other calls go over HTTP
+    private static final class StubTransport implements QdrantTransport {
+        final List<String> stored;
+        final List<String> countedValues = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger facets = new AtomicInteger();
+        Map<String, Long> facet = Map.of();
+
+        StubTransport(List<String> stored) {
+            this.stored = stored;
+        }
+
+        @Override
+        public CompletableFuture<Long> count(String collection, LogFilter filter) {
+            String endpoint = filter.matches().get("endpoint");
+            if (endpoint != null) countedValues.add(endpoint);
+            return CompletableFuture.completedFuture(stored.stream().filter(v -> endpoint == null || v.equals(endpoint)).count());
+        }
+
+        @Override
+        public CompletableFuture<Map<String, Long>> facet(String collection, String field, LogFilter filter, int limit) {
+            facets.incrementAndGet();
+            return CompletableFuture.completedFuture(new LinkedHashMap<>(facet));
+        }
+
+        @Override
+        public CompletableFuture<Void> upsert(String collection, List<QdrantPoint> points, boolean wait) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException());
+        }
+
+        @Override
+        public CompletableFuture<List<QdrantHit>> search(String collection, float[] vector, int limit, LogFilter filter) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException());
+        }
+
+        @Override
+        public CompletableFuture<QdrantPage> scroll(String collection, LogFilter filter, Long offset, int limit) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException());
+        }
+    }
+
+    private static String collection(String status, long points, long indexed, long indexingThreshold) {
+        return "{\"result\":{\"status\":\"" + status + "\",\"points_count\":" + points + ",\"indexed_vectors_count\":" + indexed
+                + ",\"config\":{\"optimizer_config\":{\"indexing_threshold\":" + indexingThreshold + "}}}}";
+    }
+}
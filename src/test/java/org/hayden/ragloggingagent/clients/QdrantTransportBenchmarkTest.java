@@ -0,0 +1,261 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerStreamTracer;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.qdrant.client.grpc.Points;
+import io.qdrant.client.grpc.PointsGrpc;
+import org.hayden.ragloggingagent.models.QdrantHit;
+import org.hayden.ragloggingagent.models.QdrantPoint;
+import org.hayden.ragloggingagent.resilience.ResilienceRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.qdrant.client.PointIdFactory.id;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Wire-size and latency benchmark: the same upserts and searches of 1536-dimension vectors through the REST
+// and gRPC transports, each against a local stand-in server that records the message bytes it receives and
+// sends (bodies for REST, serialized messages for gRPC; HTTP and HTTP/2 framing is left out of both)
+class QdrantTransportBenchmarkTest {
+
+    private static final int DIMENSIONS = 1536;
+    private static final int POINTS_PER_UPSERT = 100;
+    private static final int UPSERTS = 10;
+    private static final int SEARCHES = 100;
+    private static final int SEARCH_LIMIT = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Random random = new Random(42);
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final List<float[]> received = new ArrayList<>();
+
+    private HttpServer restServer;
+    private Server grpcServer;
+    private QdrantGrpcTransport grpcTransport;
+
+    @AfterEach
+    void tearDown() {
+        if (restServer != null) restServer.stop(0);
+        if (grpcTransport != null) grpcTransport.close();
+        if (grpcServer != null) grpcServer.shutdownNow();
+    }
+
+    @Test
+    void grpcSendsFewerBytesThanRestForVectors() throws Exception {
+        List<List<QdrantPoint>> batches = new ArrayList<>();
+        for (int i = 0; i < UPSERTS; i++) {
+            List<QdrantPoint> batch = new ArrayList<>();
+            for (int j = 0; j < POINTS_PER_UPSERT; j++) {
+                batch.add(point(i * POINTS_PER_UPSERT + j));
+            }
+            batches.add(batch);
+        }
+        float[] query = vector();
+
+        Result rest = run("REST", startRest(), batches, query);
+        Result grpc = run("gRPC", startGrpc(), batches, query);
+
+        // The records carry the bytes and mean latencies per request, so a failure shows the whole measurement
+        assertTrue(grpc.upsertBytes * 2 < rest.upsertBytes,
+                "gRPC upserts should take under half the bytes of REST: " + grpc + " vs " + rest);
+        assertTrue(grpc.searchBytes < rest.searchBytes, "gRPC searches should take fewer bytes than REST: " + grpc + " vs " + rest);
+    }
+
+    private record Result(String name, long upsertBytes, double upsertMillis, long searchBytes, double searchMillis) {
+    }
+
+    private Result run(String name, QdrantTransport transport, List<List<QdrantPoint>> batches, float[] query) throws Exception {
+        // Warm-up round, then reset the counters
+        transport.upsert("logs", batches.get(0), true).get();
+        transport.search("logs", query, SEARCH_LIMIT, null).get();
+        bytesIn.set(0);
+        bytesOut.set(0);
+        received.clear();
+
+        long start = System.nanoTime();
+        for (List<QdrantPoint> batch : batches) {
+            transport.upsert("logs", batch, true).get();
+        }
+        double upsertMillis = (System.nanoTime() - start) / 1e6 / batches.size();
+        long upsertBytes = (bytesIn.get() + bytesOut.get()) / batches.size();
+        assertEquals(UPSERTS * POINTS_PER_UPSERT, received.size());
+        assertArrayEquals(batches.get(3).get(7).vector, received.get(3 * POINTS_PER_UPSERT + 7));
+
+        bytesIn.set(0);
+        bytesOut.set(0);
+        start = System.nanoTime();
+        List<QdrantHit> hits = null;
+        for (int i = 0; i < SEARCHES; i++) {
+            hits = transport.search("logs", query, SEARCH_LIMIT, null).get();
+        }
+        double searchMillis = (System.nanoTime() - start) / 1e6 / SEARCHES;
+        long searchBytes = (bytesIn.get() + bytesOut.get()) / SEARCHES;
+        assertEquals(SEARCH_LIMIT, hits.size());
+        assertEquals("/api/3", hits.get(3).payload().get("endpoint"));
+
+        return new Result(name, upsertBytes, upsertMillis, searchBytes, searchMillis);
+    }
+
+    private QdrantTransport startRest() throws Exception {
+        restServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        restServer.createContext("/", exchange -> {
+            byte[] request = exchange.getRequestBody().readAllBytes();
+            bytesIn.addAndGet(request.length);
+            JsonNode body = objectMapper.readTree(request);
+            String response;
+            if (exchange.getRequestURI().getPath().endsWith("/search")) {
+                List<Map<String, Object>> hits = new ArrayList<>();
+                for (int i = 0; i < body.path("limit").asInt(); i++) {
+                    hits.add(Map.of("id", i, "version", 0, "score", 1f - i / 100f, "payload", payload(i)));
+                }
+                response = objectMapper.writeValueAsString(Map.of("result", hits, "status", "ok", "time", 0.001));
+            } else {
+                synchronized (received) {
+                    for (JsonNode point : body.path("points")) {
+                        received.add(objectMapper.convertValue(point.path("vector"), float[].class));
+                    }
+                }
+                response = "{\"result\":{\"operation_id\":1,\"status\":\"completed\"},\"status\":\"ok\",\"time\":0.001}";
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            bytesOut.addAndGet(bytes.length);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        restServer.start();
+
+        QdrantRestTransport transport = new QdrantRestTransport();
+        ReflectionTestUtils.setField(transport, "client", HttpClient.newHttpClient());
+        ReflectionTestUtils.setField(transport, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(transport, "resilience", resilience());
+        ReflectionTestUtils.setField(transport, "qdrantUrl", "http://localhost:" + restServer.getAddress().getPort());
+        ReflectionTestUtils.setField(transport, "requestTimeoutSeconds", 30L);
+        return transport;
+    }
+
+    private QdrantTransport startGrpc() throws Exception {
+        PointsGrpc.PointsImplBase points = new PointsGrpc.PointsImplBase() {
+            @Override
+            public void upsert(Points.UpsertPoints request, StreamObserver<Points.PointsOperationResponse> response) {
+                synchronized (received) {
+                    for (Points.PointStruct point : request.getPointsList()) {
+                        List<Float> data = point.getVectors().getVector().getDataList();
+                        float[] vector = new float[data.size()];
+                        for (int i = 0; i < vector.length; i++) vector[i] = data.get(i);
+                        received.add(vector);
+                    }
+                }
+                response.onNext(Points.PointsOperationResponse.newBuilder()
+                        .setResult(Points.UpdateResult.newBuilder().setOperationId(1).setStatus(Points.UpdateStatus.Completed))
+                        .setTime(0.001)
+                        .build());
+                response.onCompleted();
+            }
+
+            @Override
+            public void search(Points.SearchPoints request, StreamObserver<Points.SearchResponse> response) {
+                Points.SearchResponse.Builder result = Points.SearchResponse.newBuilder().setTime(0.001);
+                for (int i = 0; i < request.getLimit(); i++) {
+                    result.addResult(Points.ScoredPoint.newBuilder()
+                            .setId(id(i))
+                            .setScore(1f - i / 100f)
+                            .putAllPayload(QdrantGrpcTransport.toValues(payload(i))));
+                }
+                response.onNext(result.build());
+                response.onCompleted();
+            }
+        };
+        grpcServer = NettyServerBuilder.forAddress(new InetSocketAddress("localhost", 0))
+                .addService(points)
+                .addStreamTracerFactory(new ServerStreamTracer.Factory() {
+                    @Override
+                    public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+                        return new ServerStreamTracer() {
+                            @Override
+                            public void inboundWireSize(long bytes) {
+                                bytesIn.addAndGet(bytes);
+                            }
+
+                            @Override
+                            public void outboundWireSize(long bytes) {
+                                bytesOut.addAndGet(bytes);
+                            }
+                        };
+                    }
+                })
+                .build()
+                .start();
+
+        grpcTransport = new QdrantGrpcTransport();
+        ReflectionTestUtils.setField(grpcTransport, "resilience", resilience());
+        ReflectionTestUtils.setField(grpcTransport, "qdrantUrl", "http://localhost:6333");
+        ReflectionTestUtils.setField(grpcTransport, "grpcPort", grpcServer.getPort());
+        ReflectionTestUtils.setField(grpcTransport, "requestTimeoutSeconds", 30L);
+        grpcTransport.init();
+        return grpcTransport;
+    }
+
+    private static ResilienceRegistry resilience() {
+        ResilienceRegistry resilience = new ResilienceRegistry();
+        ReflectionTestUtils.setField(resilience, "qdrantRequestsPerSecond", 100_000.0);
+        ReflectionTestUtils.setField(resilience, "minRequestsPerSecond", 1.0);
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 1);
+        ReflectionTestUtils.setField(resilience, "failureThreshold", 10);
+        ReflectionTestUtils.setField(resilience, "openSeconds", 1L);
+        return resilience;
+    }
+
+    private QdrantPoint point(int id) {
+        QdrantPoint point = new QdrantPoint();
+        point.id = id;
+        point.vector = vector();
+        point.payload = payload(id);
+        return point;
+    }
+
+    private float[] vector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian() * 0.03f;
+        }
+        return vector;
+    }
+
+    private static Map<String, Object> payload(int i) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("ip", "10.0.0." + (i % 250));
+        payload.put("timestamp", "27/Dec/2037:12:00:00 +0000");
+        payload.put("timestamp_ms", 2145960000000L + i);
+        payload.put("request_type", "GET");
+        payload.put("endpoint", "/api/" + i);
+        payload.put("status", "200");
+        payload.put("size", "512");
+        payload.put("referer", "-");
+        payload.put("user_agent", "Mozilla/5.0");
+        payload.put("response_time", "42");
+        payload.put("raw", "10.0.0.1 - - [27/Dec/2037:12:00:00 +0000] \"GET /api/" + i + " HTTP/1.1\" 200 512 \"-\" \"Mozilla/5.0\" 42");
+        return payload;
+    }
+}
@@ -0,0 +1,43 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ScrollPagesTest {
+
+    private final JsonFactory factory = new JsonFactory();
+
+    private static final String PAGE = """
+            {"result": {"points": [
+                {"id": 1, "payload": {"status": "200", "nested": {"status": "x"}}, "vector": null},
+                {"id": 2, "payload": {"other": [1, 2], "status": 404}},
+                {"id": 3, "payload": {"status": null}},
+                {"id": 4, "payload": {}}
+              ], "next_page_offset": 17},
+             "status": "ok", "time": 0.01}
+            """;
+
+    @Test
+    void readsOnlyTheRequestedTopLevelPayloadField() throws Exception {
+        List<String> values = new ArrayList<>();
+        int points = ScrollPages.readFieldValues(factory, PAGE.getBytes(StandardCharsets.UTF_8), "status", values::add);
+        assertEquals(4, points);
+        assertEquals(List.of("200", "404"), values);
+    }
+
+    @Test
+    void findsNextPageOffset() throws Exception {
+        assertEquals(17L, ScrollPages.nextPageOffset(factory, PAGE.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("a1b2", ScrollPages.nextPageOffset(factory,
+                "{\"result\":{\"points\":[],\"next_page_offset\":\"a1b2\"}}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(ScrollPages.nextPageOffset(factory,
+                "{\"result\":{\"points\":[{\"id\":1}],\"next_page_offset\":null}}".getBytes(StandardCharsets.UTF_8)));
+    }
+}
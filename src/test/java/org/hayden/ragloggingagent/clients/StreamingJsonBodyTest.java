@@ -0,0 +1,58 @@
+package org.hayden.ragloggingagent.clients;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hayden.ragloggingagent.models.QdrantPoint;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingJsonBodyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void streamsTheSameBytesAsWholeBatchSerializationInBoundedMemory() throws Exception {
+        Random random = new Random(7);
+        List<QdrantPoint> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            QdrantPoint point = new QdrantPoint();
+            point.id = i;
+            point.vector = new float[1536];
+            for (int j = 0; j < point.vector.length; j++) point.vector[j] = (float) random.nextGaussian();
+            point.payload = Map.of("endpoint", "/api/" + i, "status", "200");
+            points.add(point);
+        }
+        byte[] expected = objectMapper.writeValueAsBytes(Map.of("points", points));
+
+        StreamingJsonBody body = new StreamingJsonBody(objectMapper, "points", points, false);
+        assertArrayEquals(expected, readAll(body));
+        assertTrue(body.bufferCapacity() * 50L < expected.length,
+                "Upsert body of " + expected.length + " bytes should stream through a buffer under 1/50 of it, was " + body.bufferCapacity());
+
+        StreamingJsonBody gzipped = new StreamingJsonBody(objectMapper, "points", points, true);
+        byte[] compressed = readAll(gzipped);
+        assertTrue(compressed.length < expected.length);
+        assertArrayEquals(expected, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+
+        assertArrayEquals("{\"points\":[]}".getBytes(), readAll(new StreamingJsonBody(objectMapper, "points", List.of(), false)));
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) >= 0; ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,82 @@
+package org.hayden.ragloggingagent.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EndpointGuardTest {
+
+    @Test
+    void halfOpenAdmitsOneTrialUntilItIsResolved() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        breaker.onInconclusive();
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void throttledTrialHandsTheSlotBack() throws Exception {
+        EndpointGuard guard = openGuard(100);
+        assertThrows(IOException.class, () -> guard.execute(() -> {
+            throw new RetryableException("slow down", 429, 0, null);
+        }));
+        assertEquals("HALF_OPEN", guard.stats().get("circuit_state"));
+
+        assertEquals("ok", guard.execute(() -> "ok"));
+        assertEquals("CLOSED", guard.stats().get("circuit_state"));
+    }
+
+    @Test
+    void nonIoExceptionsHandTheSlotBack() throws Exception {
+        EndpointGuard guard = openGuard(100);
+        assertThrows(IllegalStateException.class, () -> guard.execute(() -> {
+            throw new IllegalStateException("bad request body");
+        }));
+        assertEquals("ok", guard.execute(() -> "ok"));
+        assertEquals("CLOSED", guard.stats().get("circuit_state"));
+    }
+
+    @Test
+    void asyncNonIoExceptionsHandTheSlotBack() throws Exception {
+        EndpointGuard guard = openGuard(100);
+        CompletableFuture<String> failed = guard.executeAsync(() -> CompletableFuture.failedFuture(new IllegalArgumentException("bad")));
+        CompletionException error = assertThrows(CompletionException.class, failed::join);
+        assertTrue(error.getCause() instanceof IllegalArgumentException);
+
+        assertEquals("ok", guard.executeAsync(() -> CompletableFuture.completedFuture("ok")).join());
+        assertEquals("CLOSED", guard.stats().get("circuit_state"));
+    }
+
+    @Test
+    void emptyBucketDoesNotClaimTheTrial() {
+        // Capacity of one token, spent by the call that opens the breaker
+        EndpointGuard guard = openGuard(1);
+        assertFalse(guard.tryAcquire());
+        assertEquals("OPEN", guard.stats().get("circuit_state"));
+    }
+
+    // Breaker opens after one failure and is half-open again as soon as it is asked
+    private static EndpointGuard openGuard(double rate) {
+        EndpointGuard guard = new EndpointGuard("test", rate, 1, 1, 1, 0, 0, 1, 0);
+        assertThrows(IOException.class, () -> guard.execute(() -> {
+            throw new IOException("connection reset");
+        }));
+        assertEquals("OPEN", guard.stats().get("circuit_state"));
+        return guard;
+    }
+}
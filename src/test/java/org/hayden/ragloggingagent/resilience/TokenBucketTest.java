@@ -0,0 +1,54 @@
+package org.hayden.ragloggingagent.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void burstUpToCapacityThenWaitForTheRefill() {
+        TokenBucket bucket = new TokenBucket(100, 1000);
+
+        assertTrue(bucket.tryAcquire(100));
+        assertFalse(bucket.tryAcquire(50));
+        long wait = bucket.nanosUntilAvailable(50);
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(50), "waits " + wait + " ns");
+    }
+
+    @Test
+    void requestLargerThanTheBucketTakesAFullBucket() {
+        // Otherwise an input batch bigger than a minute's budget would wait forever
+        TokenBucket bucket = new TokenBucket(100, 1);
+
+        assertEquals(0, bucket.nanosUntilAvailable(1000));
+        assertTrue(bucket.tryAcquire(1000));
+        assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    void acquireBlocksOnlyUntilEnoughHasRefilled() throws Exception {
+        TokenBucket bucket = new TokenBucket(100, 1000);
+        bucket.acquire(100);
+
+        long start = System.nanoTime();
+        bucket.acquire(50);
+        long waited = System.nanoTime() - start;
+        assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(40), "waited " + waited + " ns");
+        assertTrue(waited < TimeUnit.SECONDS.toNanos(2), "waited " + waited + " ns");
+    }
+
+    @Test
+    void rateChangesApplyToTheNextRefill() {
+        TokenBucket bucket = new TokenBucket(100, 1000);
+        bucket.tryAcquire(100);
+        bucket.setRate(10);
+
+        assertEquals(10, bucket.getRate());
+        assertTrue(bucket.nanosUntilAvailable(50) > TimeUnit.SECONDS.toNanos(4));
+    }
+}
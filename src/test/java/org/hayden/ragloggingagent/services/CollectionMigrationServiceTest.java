@@ -0,0 +1,138 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.clients.OpenAIClient;
+import org.hayden.ragloggingagent.clients.QdrantClient;
+import org.hayden.ragloggingagent.models.QdrantPoint;
+import org.hayden.ragloggingagent.models.QdrantPointPage;
+import org.hayden.ragloggingagent.utils.PointIds;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CollectionMigrationServiceTest {
+
+    private final CollectionMigrationService migrations = new CollectionMigrationService();
+    private final QdrantClient qdrantClient = mock(QdrantClient.class);
+    private final OpenAIClient openAIClient = mock(OpenAIClient.class);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(migrations, "qdrantClient", qdrantClient);
+        ReflectionTestUtils.setField(migrations, "openAIClient", openAIClient);
+        ReflectionTestUtils.setField(migrations, "queryCache", mock(QueryResultCache.class));
+        ReflectionTestUtils.setField(migrations, "collectionName", "logs");
+    }
+
+    @Test
+    void dimensionMigrationMirrorsCopiesEveryPageThenSwitchesTheAlias() throws Exception {
+        when(qdrantClient.aliasTarget("logs")).thenReturn("logs_v1");
+        List<QdrantPoint> first = List.of(point(1, "a"), point(2, "b"));
+        List<QdrantPoint> second = List.of(point(3, "c"));
+        when(qdrantClient.scrollPointsWithVectors(null)).thenReturn(new QdrantPointPage(first, 3L));
+        when(qdrantClient.scrollPointsWithVectors(3L)).thenReturn(new QdrantPointPage(second, null));
+
+        Map<String, Object> started = migrations.migrateCollectionDimensions(256);
+        String target = (String) started.get("target");
+        assertEquals("logs_v1", started.get("source"));
+        assertEquals("done", awaitMigration());
+        assertEquals(3L, migrations.collectionMigrationStatus().get("copied"));
+
+        InOrder order = inOrder(qdrantClient, openAIClient);
+        order.verify(qdrantClient).createCollection(target, 256);
+        order.verify(qdrantClient).beginBulkLoad(target);
+        order.verify(qdrantClient).mirrorUpserts("logs", target, 256);
+        order.verify(qdrantClient).copyPoints(target, first, 256);
+        order.verify(qdrantClient).copyPoints(target, second, 256);
+        order.verify(qdrantClient).endBulkLoad(target);
+        order.verify(qdrantClient).switchAlias("logs", target, 256);
+        order.verify(openAIClient).setDimensions(256);
+        verify(qdrantClient, never()).deletePoints(anyString(), any());
+    }
+
+    @Test
+    void failedCopyStopsMirroringAndLeavesTheAliasAlone() throws Exception {
+        when(qdrantClient.aliasTarget("logs")).thenReturn("logs_v1");
+        when(qdrantClient.scrollPointsWithVectors(null)).thenReturn(new QdrantPointPage(List.of(point(1, "a")), null));
+        doThrow(new IOException("target unavailable")).when(qdrantClient).copyPoints(anyString(), any(), anyInt());
+
+        String target = (String) migrations.migrateCollectionDimensions(256).get("target");
+        assertEquals("failed", awaitMigration());
+        assertEquals("target unavailable", migrations.collectionMigrationStatus().get("error"));
+        verify(qdrantClient).stopMirroring();
+        verify(qdrantClient).abandonBulkLoad(target);
+        verify(qdrantClient, never()).switchAlias(anyString(), anyString(), anyInt());
+        verify(openAIClient, never()).setDimensions(anyInt());
+    }
+
+    @Test
+    void dimensionMigrationRefusesAPlainCollection() throws Exception {
+        when(qdrantClient.aliasTarget("logs")).thenReturn(null);
+
+        assertThrows(IllegalStateException.class, () -> migrations.migrateCollectionDimensions(256));
+        verify(qdrantClient, never()).createCollection(anyString(), anyInt());
+        verify(qdrantClient, never()).mirrorUpserts(anyString(), anyString(), anyInt());
+        assertEquals(Map.of("state", "none"), migrations.collectionMigrationStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pointMigrationMovesOldIdsAndRetypesNumbers() throws Exception {
+        // An old 31-bit ID, a current ID with status stored as text, and a point that is already up to date
+        QdrantPoint oldId = point(7, "old line");
+        QdrantPoint textStatus = point(PointIds.of("text status"), "text status");
+        textStatus.payload.put("status", " 404");
+        QdrantPoint current = point(PointIds.of("current"), "current");
+        current.payload.put("status", 200L);
+        when(qdrantClient.scrollPointsWithVectors(null))
+                .thenReturn(new QdrantPointPage(List.of(oldId, textStatus, current), null));
+
+        assertEquals(Map.of("scanned", 3L, "migrated", 2L), migrations.migratePoints());
+
+        ArgumentCaptor<List<QdrantPoint>> moved = ArgumentCaptor.forClass(List.class);
+        InOrder order = inOrder(qdrantClient);
+        order.verify(qdrantClient).insertPointsInBulk(eq("logs"), moved.capture());
+        order.verify(qdrantClient).deletePoints("logs", List.of(7L));
+        assertEquals(Set.of(PointIds.of("old line"), PointIds.of("text status")),
+                Set.copyOf(moved.getValue().stream().map(p -> p.id).toList()));
+        assertEquals(404L, textStatus.payload.get("status"));
+    }
+
+    // State of the migration once it has finished, or after five seconds
+    private String awaitMigration() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Set.of("done", "failed").contains(migrations.collectionMigrationStatus().get("state"))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return (String) migrations.collectionMigrationStatus().get("state");
+    }
+
+    private static QdrantPoint point(long id, String raw) {
+        QdrantPoint point = new QdrantPoint();
+        point.id = id;
+        point.vector = new float[]{1f, 0f};
+        point.payload = new HashMap<>(Map.of("raw", raw));
+        return point;
+    }
+}
@@ -0,0 +1,101 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.clients.OpenAIClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EmbeddingCacheTest {
+
+    // A full-size vector with its key and map entry; a megabyte of memory tier holds 167 of them
+    private static final int ENTRIES_PER_MB = 1024 * 1024 / (OpenAIClient.NATIVE_DIMENSIONS * Float.BYTES + 120);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void vectorsWrittenBeforeARestartAreServedFromDisk() {
+        Path file = dir.resolve("embeddings.bin");
+        EmbeddingCache before = cache(64, file);
+        for (int i = 0; i < 3; i++) {
+            before.put(before.key("model", "line " + i), vector(i));
+        }
+        before.close();
+
+        EmbeddingCache after = cache(64, file);
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(vector(i), after.get(after.key("model", "line " + i)));
+        }
+        assertNull(after.get(after.key("other model", "line 0")), "the model is part of the key");
+        // Disk hits were promoted, so the second lookup stays in memory
+        after.get(after.key("model", "line 0"));
+
+        Map<String, Object> stats = after.stats();
+        assertEquals(3L, stats.get("disk_hits"));
+        assertEquals(1L, stats.get("memory_hits"));
+        assertEquals(1L, stats.get("misses"));
+        assertEquals(3, stats.get("memory_entries"));
+        assertEquals(3, stats.get("disk_entries"));
+        after.close();
+    }
+
+    @Test
+    void memoryTierEvictsTheLeastRecentlyUsedOnceItsBudgetIsSpent() {
+        EmbeddingCache cache = cache(1, null);
+        int written = ENTRIES_PER_MB + 50;
+        for (int i = 0; i < written; i++) {
+            cache.put(cache.key("model", "line " + i), vector(i));
+            if (i == 100) {
+                // Used again, so the lines written after it are evicted first
+                cache.get(cache.key("model", "line 0"));
+            }
+        }
+
+        assertEquals(167, ENTRIES_PER_MB);
+        assertEquals(ENTRIES_PER_MB, cache.stats().get("memory_entries"));
+        assertNotNull(cache.get(cache.key("model", "line 0")));
+        assertNull(cache.get(cache.key("model", "line 1")));
+        assertNull(cache.get(cache.key("model", "line 50")));
+        assertNotNull(cache.get(cache.key("model", "line 51")));
+        assertNotNull(cache.get(cache.key("model", "line " + (written - 1))));
+    }
+
+    @Test
+    void vectorsEvictedFromMemoryAreStillOnDisk() {
+        EmbeddingCache cache = cache(1, dir.resolve("embeddings.bin"));
+        for (int i = 0; i < ENTRIES_PER_MB + 50; i++) {
+            cache.put(cache.key("model", "line " + i), vector(i));
+        }
+
+        assertArrayEquals(vector(0), cache.get(cache.key("model", "line 0")));
+        assertEquals(1L, cache.stats().get("disk_hits"));
+        assertEquals(ENTRIES_PER_MB + 50, cache.stats().get("disk_entries"));
+        cache.close();
+    }
+
+    private static EmbeddingCache cache(long memoryMb, Path disk) {
+        EmbeddingCache cache = new EmbeddingCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "memoryMb", memoryMb);
+        ReflectionTestUtils.setField(cache, "diskPath", disk == null ? "" : disk.toString());
+        ReflectionTestUtils.setField(cache, "diskSegmentMb", 1);
+        ReflectionTestUtils.setField(cache, "diskMaxMb", 16L);
+        cache.init();
+        return cache;
+    }
+
+    private static float[] vector(int i) {
+        float[] vector = new float[OpenAIClient.NATIVE_DIMENSIONS];
+        vector[i % vector.length] = 1f;
+        vector[0] += i;
+        return vector;
+    }
+}
@@ -0,0 +1,97 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.clients.OpenAIClient;
+import org.hayden.ragloggingagent.clients.QdrantClient;
+import org.hayden.ragloggingagent.models.LogRecord;
+import org.hayden.ragloggingagent.models.QdrantPoint;
+import org.hayden.ragloggingagent.utils.PointIds;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// The dedup stage in front of embedding: repeats within a chunk, IDs the local filter knows and IDs Qdrant
+// already stores never reach the embedding API
+class EmbeddingServiceTest {
+
+    private final EmbeddingService service = new EmbeddingService();
+    private final OpenAIClient openAIClient = mock(OpenAIClient.class);
+    private final QdrantClient qdrantClient = mock(QdrantClient.class);
+    private final SeenPointIdFilter seenPointIdFilter = new SeenPointIdFilter();
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() {
+        LogParserService logParserService = mock(LogParserService.class);
+        when(logParserService.parse(anyString())).thenAnswer(invocation -> new LogRecord("10.0.0.1",
+                "27/Dec/2037:12:00:00 +0000", 0, "GET", "/api", 200, 1, "-", "agent", 1, invocation.getArgument(0)));
+        ReflectionTestUtils.setField(seenPointIdFilter, "enabled", true);
+        ReflectionTestUtils.setField(seenPointIdFilter, "directory", dir.toString());
+        ReflectionTestUtils.setField(seenPointIdFilter, "expectedIds", 1000L);
+        ReflectionTestUtils.setField(seenPointIdFilter, "falsePositiveRate", 0.0001);
+
+        ReflectionTestUtils.setField(service, "openAIClient", openAIClient);
+        ReflectionTestUtils.setField(service, "qdrantClient", qdrantClient);
+        ReflectionTestUtils.setField(service, "logParserService", logParserService);
+        ReflectionTestUtils.setField(service, "seenPointIdFilter", seenPointIdFilter);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void onlyNewLinesAreEmbeddedAfterOneBatchedLookup() throws Exception {
+        seenPointIdFilter.markSeen("logs", List.of(PointIds.of("known locally")));
+        // Copied at call time: the stage goes on to consume the set it passed
+        List<List<Long>> lookups = new ArrayList<>();
+        when(qdrantClient.findExistingPointIds(anyString(), any())).thenAnswer(invocation -> {
+            lookups.add(List.copyOf((Collection<Long>) invocation.getArgument(1)));
+            return Set.of(PointIds.of("in qdrant"));
+        });
+        when(openAIClient.embedLogMessages(anyList())).thenAnswer(invocation ->
+                ((List<String>) invocation.getArgument(0)).stream().map(line -> new float[]{1f, 0f}).toList());
+
+        service.processAndPublishLog(List.of("a", "b", "a", "in qdrant", "known locally", "b"), "logs");
+
+        assertEquals(List.of(List.of(PointIds.of("a"), PointIds.of("b"), PointIds.of("in qdrant"))), lookups);
+        verify(openAIClient).embedLogMessages(List.of("a", "b"));
+
+        ArgumentCaptor<List<QdrantPoint>> upserted = ArgumentCaptor.forClass(List.class);
+        verify(qdrantClient).insertPointsInBulk(eq("logs"), upserted.capture());
+        assertEquals(List.of(PointIds.of("a"), PointIds.of("b")), upserted.getValue().stream().map(p -> p.id).toList());
+
+        // What Qdrant reported and what was upserted are both remembered locally
+        for (String line : List.of("a", "b", "in qdrant")) {
+            assertTrue(seenPointIdFilter.mightContain("logs", PointIds.of(line)), line);
+        }
+    }
+
+    @Test
+    void chunkOfKnownLinesNeverReachesTheApi() throws Exception {
+        seenPointIdFilter.markSeen("logs", List.of(PointIds.of("known locally")));
+        when(qdrantClient.findExistingPointIds(anyString(), any())).thenReturn(Set.of(PointIds.of("in qdrant")));
+
+        service.processAndPublishLog(List.of("in qdrant", "known locally", "in qdrant"), "logs");
+
+        verify(openAIClient, never()).embedLogMessages(anyList());
+        verify(qdrantClient, never()).insertPointsInBulk(anyString(), anyList());
+    }
+}
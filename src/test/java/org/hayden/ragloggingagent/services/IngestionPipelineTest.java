@@ -0,0 +1,123 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.models.LogBatch;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestionPipelineTest {
+
+    private final List<String> sunk = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean closeHookRan = new AtomicBoolean();
+
+    @Test
+    void singleWorkerStagesKeepSubmissionOrder() throws Exception {
+        try (IngestionPipeline pipeline = new IngestionPipeline(0)
+                .stage("tag", 1, 2, batch -> new LogBatch(batch.collection, List.of(batch.lines.get(0) + "!")))
+                .stage("sink", 1, 2, this::sink)
+                .onClose(() -> closeHookRan.set(!sunk.isEmpty()))
+                .start()) {
+            for (int i = 0; i < 50; i++) {
+                pipeline.submit(batch(i));
+            }
+        }
+        assertEquals(IntStream.range(0, 50).mapToObj(i -> i + "!").toList(), sunk);
+        assertTrue(closeHookRan.get(), "close hook runs after the stages drained");
+    }
+
+    @Test
+    void stageFailureSurfacesOnceAndStopsLaterBatches() {
+        IngestionPipeline pipeline = new IngestionPipeline(0)
+                .stage("check", 1, 1, batch -> {
+                    if (batch.lines.get(0).equals("3")) throw new IOException("batch 3 rejected");
+                    return batch;
+                })
+                .stage("sink", 1, 1, this::sink)
+                .onClose(() -> closeHookRan.set(true))
+                .start();
+
+        IOException failure = assertThrows(IOException.class, () -> {
+            try (pipeline) {
+                for (int i = 0; i < 20 && !pipeline.hasFailed(); i++) {
+                    pipeline.submit(batch(i));
+                }
+            }
+        });
+        assertEquals("batch 3 rejected", failure.getMessage());
+        assertEquals(0, failure.getSuppressed().length);
+        assertTrue(sunk.stream().allMatch(line -> Integer.parseInt(line) < 3), sunk.toString());
+        assertTrue(closeHookRan.get());
+    }
+
+    @Test
+    void checkedStageFailuresAreWrapped() {
+        Exception cause = new Exception("not an IOException");
+        IngestionPipeline pipeline = new IngestionPipeline(0)
+                .stage("fail", 1, 1, batch -> {
+                    throw cause;
+                })
+                .start();
+
+        IOException failure = assertThrows(IOException.class, () -> {
+            try (pipeline) {
+                pipeline.submit(batch(0));
+            }
+        });
+        assertEquals(cause, failure.getCause());
+    }
+
+    @Test
+    void fullQueueBlocksTheProducerUntilTheStageCatchesUp() throws Exception {
+        CountDownLatch firstTaken = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch thirdSubmitted = new CountDownLatch(1);
+        try (IngestionPipeline pipeline = new IngestionPipeline(0)
+                .stage("slow", 1, 1, batch -> {
+                    firstTaken.countDown();
+                    release.await();
+                    return batch;
+                })
+                .stage("sink", 1, 1, this::sink)
+                .start()) {
+            // The worker holds batch 0 and the one-slot queue holds batch 1, so batch 2 has nowhere to go
+            pipeline.submit(batch(0));
+            assertTrue(firstTaken.await(5, TimeUnit.SECONDS));
+            pipeline.submit(batch(1));
+            Thread producer = Thread.ofVirtual().start(() -> {
+                try {
+                    pipeline.submit(batch(2));
+                    thirdSubmitted.countDown();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertFalse(thirdSubmitted.await(300, TimeUnit.MILLISECONDS), "submit returned while the queue was full");
+
+            release.countDown();
+            assertTrue(thirdSubmitted.await(5, TimeUnit.SECONDS));
+            producer.join();
+        }
+        assertEquals(List.of("0", "1", "2"), sunk);
+    }
+
+    private LogBatch sink(LogBatch batch) {
+        sunk.addAll(batch.lines);
+        return null;
+    }
+
+    private static LogBatch batch(int i) {
+        return new LogBatch("logs", List.of(String.valueOf(i)));
+    }
+}
@@ -0,0 +1,199 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.models.LogBatch;
+import org.hayden.ragloggingagent.models.LogFilter;
+import org.hayden.ragloggingagent.models.LogRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogAggregationIndexTest {
+
+    private final LogAggregationIndex index = new LogAggregationIndex();
+    private final List<LogRecord> records = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(index, "collectionName", "logs");
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "maxDictionaryValues", 100000);
+        ReflectionTestUtils.setField(index, "minuteBuckets", 10080);
+        ReflectionTestUtils.setField(index, "hourBuckets", 8760);
+        ReflectionTestUtils.setField(index, "dayBuckets", 3650);
+        ReflectionTestUtils.setField(index, "latencyMinuteBuckets", 120);
+        ReflectionTestUtils.setField(index, "latencyHourBuckets", 168);
+        ReflectionTestUtils.setField(index, "latencyDayBuckets", 365);
+        index.init();
+        for (int i = 0; i < 5000; i++) {
+            records.add(new LogRecord("10.0.0." + (i % 4), String.format("27/Dec/2037:12:%02d:00 +0000", i % 60),
+                    0, i % 3 == 0 ? "POST" : "GET", "/api/" + (i % 5), i % 7 == 0 ? 500 : 200, i, "-", "agent",
+                    i % 100, "line " + i));
+        }
+    }
+
+    @Test
+    void groupByMatchesNaiveCountsUnderCombinedFilters() {
+        rebuild(0, records.size());
+        assertTrue(index.isReady());
+
+        LogFilter filter = LogFilter.of("2037-12-27T12:10:00Z", "2037-12-27T12:19:59Z", "500", null, "GET",
+                null, null, null, null, null);
+        Map<String, Integer> expected = new HashMap<>();
+        for (LogRecord record : records) {
+            int minute = Integer.parseInt(record.timestamp().substring(15, 17));
+            if (record.status() == 500 && record.method().equals("GET") && minute >= 10 && minute <= 19) {
+                expected.merge(record.endpoint(), 1, Integer::sum);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, index.groupBy("endpoint", filter));
+
+        assertEquals(Map.of(), index.groupBy("endpoint", LogFilter.of(null, null, "404", null, null, null, null, null, null, null)));
+        assertEquals(Set.of("GET", "POST"), index.distinctValues("request_type"));
+
+        // Ranges on integer fields, open-ended or not, compare numerically rather than as text
+        Map<String, Integer> slow = new HashMap<>();
+        for (LogRecord record : records) {
+            if (record.status() >= 500 && record.responseTime() >= 90) {
+                slow.merge(record.endpoint(), 1, Integer::sum);
+            }
+        }
+        assertEquals(slow, index.groupBy("endpoint", LogFilter.of(null, null, "500-599", null, null, null, null, null, null, "90-")));
+    }
+
+    @Test
+    void pointsUpsertedDuringRebuildAreCountedOnce() {
+        index.beginRebuild();
+        List<Long> ids = new ArrayList<>();
+        List<Map<String, String>> payloads = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            ids.add((long) i);
+            payloads.add(payload(records.get(i)));
+        }
+        index.addRebuildPage(ids, payloads);
+
+        // 2500..3499 arrive through ingest while the scroll is running; 2500..2999 were already scrolled
+        LogBatch batch = LogBatch.ofRecords("logs", new ArrayList<>(records.subList(2500, 3500)));
+        batch.ids = new ArrayList<>();
+        for (int i = 2500; i < 3500; i++) batch.ids.add((long) i);
+        index.onUpserted(batch);
+        index.finishRebuild();
+
+        int total = index.groupBy("status", LogFilter.of(null, null, null, null, null, null, null, null, null, null))
+                .values().stream().mapToInt(Integer::intValue).sum();
+        assertEquals(3500, total);
+    }
+
+    @Test
+    void repeatedUpsertsOfAnIndexedPointAreCountedOnce() {
+        rebuild(0, 1000);
+
+        // 900..1099, with 1000..1099 sent twice in the same batch
+        List<LogRecord> upserted = new ArrayList<>(records.subList(900, 1100));
+        upserted.addAll(records.subList(1000, 1100));
+        LogBatch batch = LogBatch.ofRecords("logs", upserted);
+        batch.ids = new ArrayList<>();
+        for (int i = 900; i < 1100; i++) batch.ids.add((long) i);
+        for (int i = 1000; i < 1100; i++) batch.ids.add((long) i);
+        index.onUpserted(batch);
+
+        assertEquals(1100, index.stats().get("rows"));
+    }
+
+    @Test
+    void timestampsAreRenderedBackFromMillisAndOffset() {
+        records.set(0, new LogRecord("10.0.0.1", "27/Dec/2037:17:30:00 +0530", 0, "GET", "/api/0", 200, 1, "-", "agent", 1, "line 0"));
+        records.set(1, new LogRecord("10.0.0.1", "not a timestamp", 0, "GET", "/api/0", 200, 1, "-", "agent", 1, "line 1"));
+        rebuild(0, records.size());
+
+        Map<String, Integer> expected = new HashMap<>();
+        records.forEach(record -> expected.merge(record.timestamp(), 1, Integer::sum));
+        assertEquals(expected, index.groupBy("timestamp", LogFilter.of(null, null, null, null, null, null, null, null, null, null)));
+        assertEquals(expected.keySet(), index.distinctValues("timestamp"));
+    }
+
+    @Test
+    void fieldsOverTheDictionaryCapAreDropped() {
+        ReflectionTestUtils.setField(index, "maxDictionaryValues", 3);
+        // Four IPs, five endpoints and a hundred or more sizes and response times; status and request type fit
+        rebuild(0, records.size());
+
+        Map<String, Object> stats = index.stats();
+        assertEquals(List.of("ip", "endpoint", "size", "response_time"), stats.get("dropped_fields"));
+        assertTrue((Long) stats.get("heap_bytes") > 0);
+
+        LogFilter all = LogFilter.of(null, null, null, null, null, null, null, null, null, null);
+        assertNull(index.groupBy("ip", all));
+        assertNull(index.groupBy("status", LogFilter.of(null, null, null, "10.0.0.1", null, null, null, null, null, null)));
+        assertNull(index.distinctValues("endpoint"));
+        assertEquals(Set.of("GET", "POST"), index.distinctValues("request_type"));
+        assertEquals(records.size(), index.groupBy("status", all).values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void timeHistogramCountsPerMinuteWithPercentiles() {
+        rebuild(0, records.size());
+
+        Map<String, Object> histogram = index.timeHistogram("2037-12-27T12:00:00Z", "2037-12-27T12:59:59Z", "minute", null, null);
+        List<Map<String, Object>> buckets = (List<Map<String, Object>>) histogram.get("buckets");
+        assertEquals(60, buckets.size());
+        assertEquals(5000L, histogram.get("total"));
+        assertEquals("2037-12-27T12:00:00Z", buckets.get(0).get("bucket_start"));
+        // Response times are uniform over 0..99, so the sketch's p95 sits close to 95
+        long p95 = (Long) histogram.get("p95_ms");
+        assertTrue(p95 >= 92 && p95 <= 97, "p95 " + p95);
+
+        Map<String, Object> errors = index.timeHistogram(null, null, "hour", "status", "500");
+        long expected = records.stream().filter(r -> r.status() == 500).count();
+        assertEquals(expected, errors.get("total"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void latencyPercentilesPerEndpointMatchExactValues() {
+        rebuild(0, records.size());
+
+        Map<String, Object> result = index.latencyPercentiles(null, null, null, "200", "endpoint", null);
+        List<Map<String, Object>> rows = (List<Map<String, Object>>) result.get("rows");
+        assertEquals(5, rows.size());
+        for (Map<String, Object> row : rows) {
+            List<Integer> latencies = records.stream()
+                    .filter(r -> r.status() == 200 && r.endpoint().equals(row.get("endpoint")))
+                    .map(LogRecord::responseTime).sorted().toList();
+            assertEquals((long) latencies.size(), row.get("count"));
+            long exactP99 = latencies.get((int) Math.ceil(0.99 * latencies.size()) - 1);
+            long p99 = (Long) row.get("p99_ms");
+            assertTrue(Math.abs(p99 - exactP99) <= Math.max(1, exactP99 * 0.04), "p99 " + p99 + " vs " + exactP99);
+        }
+    }
+
+    private void rebuild(int from, int to) {
+        index.beginRebuild();
+        List<Long> ids = new ArrayList<>();
+        List<Map<String, String>> payloads = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add((long) i);
+            payloads.add(payload(records.get(i)));
+        }
+        index.addRebuildPage(ids, payloads);
+        index.finishRebuild();
+    }
+
+    private static Map<String, String> payload(LogRecord record) {
+        Map<String, String> payload = new HashMap<>();
+        record.toPayload().forEach((field, value) -> payload.put(field, String.valueOf(value)));
+        return payload;
+    }
+}
@@ -0,0 +1,57 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.models.LogRecord;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LogParserServiceTest {
+
+    private final LogParserService parser = new LogParserService();
+
+    private static final List<String> LINES = List.of(
+            "233.223.117.90 - - [27/Dec/2037:12:00:00 +0530] \"DELETE /usr/admin HTTP/1.0\" 502 4963 \"-\" \"Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36 Edg/91.0.864.59\" 45",
+            "162.253.4.179 - - [27/Dec/2037:12:00:00 +0530] \"GET /usr/admin/developer HTTP/1.0\" 200 5041 \"http://www.parker-miller.org/tag/list/list/privacy/\" \"Mozilla/5.0 (Android 10; Mobile; rv:84.0) Gecko/84.0 Firefox/84.0\" 3885",
+            "10.0.0.1 - frank [29/Feb/2024:23:59:59 -0800] \"POST /api/v1/items?id=3 HTTP/2\" 404 0 \"\" \"curl/8.0\" 7 trailing",
+            "10.0.0.1 - - [01/Jan/2024:00:00:00 +0000] \"GET /a\"b HTTP/1.1\" 200 12 \"-\" \"agent\" 3"
+    );
+
+    @Test
+    void fastPathMatchesRegexPath() {
+        for (String line : LINES) {
+            LogRecord expected = parser.parseWithRegex(line);
+            assertNotNull(expected, line);
+            assertEquals(expected, parser.parseFast(line), line);
+        }
+    }
+
+    @Test
+    void parsesTypedFields() {
+        LogRecord record = parser.parseFast(LINES.get(1));
+        assertNotNull(record);
+        assertEquals("162.253.4.179", record.ip());
+        assertEquals("GET", record.method());
+        assertEquals("/usr/admin/developer", record.endpoint());
+        assertEquals(200, record.status());
+        assertEquals(5041, record.size());
+        assertEquals(3885, record.responseTime());
+        assertEquals(ZonedDateTime.parse("27/Dec/2037:12:00:00 +0530",
+                DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH)).toInstant().toEpochMilli(),
+                record.timestampMillis());
+    }
+
+    @Test
+    void rejectsMalformedLines() {
+        assertNull(parser.parse(""));
+        assertNull(parser.parse("not a log line"));
+        assertNull(parser.parse("1.2.3.4 - - [27/Dec/2037:12:00:00 +0530] \"GET / HTTP/1.0\" 2000 1 \"-\" \"-\" 1"));
+        assertNull(parser.parse("1.2.3.4 - - [27/Dec/2037:12:00:00 +0530] \"GET / HTTP/1.0\" 200 - \"-\" \"-\" 1"));
+    }
+}
@@ -0,0 +1,130 @@
+package org.hayden.ragloggingagent.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class LogTailServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<String> ingested = new CopyOnWriteArrayList<>();
+    private LogTailService tail;
+
+    @AfterEach
+    void stop() {
+        if (tail != null) tail.stop();
+    }
+
+    @Test
+    void followsAppendsRotationAndTruncation() throws Exception {
+        Path log = dir.resolve("access.log");
+        append(log, "a1\na2\na3\n");
+        tail = start(log);
+        await(() -> ingested.equals(List.of("a1", "a2", "a3")));
+
+        // An unterminated line waits for its newline
+        append(log, "a4\r\na5\npart");
+        await(() -> ingested.size() == 5);
+        Thread.sleep(200);
+        assertEquals(List.of("a1", "a2", "a3", "a4", "a5"), ingested);
+        append(log, "ial\n");
+        await(() -> ingested.size() == 6);
+        assertEquals("partial", ingested.get(5));
+
+        // Lines written to the old file after the rename are still picked up before switching
+        Path rotated = dir.resolve("access.log.1");
+        Files.move(log, rotated);
+        append(rotated, "old-last");
+        append(log, "b1\nb2\n");
+        await(() -> ingested.size() == 9);
+        assertEquals(List.of("old-last", "b1", "b2"), ingested.subList(6, 9));
+
+        Files.writeString(log, "c1\n", StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
+        await(() -> ingested.size() == 10);
+        assertEquals("c1", ingested.get(9));
+        tail.stop();
+
+        // A restart resumes from the committed offset
+        ingested.clear();
+        append(log, "d1\n");
+        tail = start(log);
+        await(() -> ingested.size() == 1);
+        Thread.sleep(200);
+        assertEquals(List.of("d1"), ingested);
+    }
+
+    @Test
+    void followingStartsWhereTheOneShotLoadEnded() throws Exception {
+        Path log = dir.resolve("access.log");
+        append(log, "a1\na2\npar");
+        tail = create(log);
+        LogTailService.Offset loaded = tail.currentEnd(log);
+        assertEquals(6, loaded.offset());
+
+        // Lines written while the load runs are still followed; the unterminated one is read again in full
+        append(log, "tial\nb1\n");
+        tail.recordLoaded(log, loaded);
+        tail.start("logs");
+        await(() -> ingested.size() == 2);
+        Thread.sleep(200);
+        assertEquals(List.of("partial", "b1"), ingested);
+    }
+
+    private LogTailService start(Path log) throws Exception {
+        LogTailService service = create(log);
+        service.start("logs");
+        return service;
+    }
+
+    private LogTailService create(Path log) throws Exception {
+        EmbeddingService embeddingService = mock(EmbeddingService.class);
+        doAnswer(invocation -> {
+            ingested.addAll(invocation.getArgument(0));
+            return null;
+        }).when(embeddingService).processAndPublishLog(anyList(), eq("logs"));
+
+        LogTailService service = new LogTailService();
+        ReflectionTestUtils.setField(service, "embeddingService", embeddingService);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "paths", log.toString());
+        ReflectionTestUtils.setField(service, "offsetsPath", dir.resolve("offsets.json").toString());
+        ReflectionTestUtils.setField(service, "pollIntervalMillis", 10L);
+        ReflectionTestUtils.setField(service, "maxBatchLines", 500);
+        ReflectionTestUtils.setField(service, "maxLatencyMillis", 20L);
+        ReflectionTestUtils.setField(service, "retryIntervalMillis", 100L);
+        ReflectionTestUtils.setField(service, "fromBeginning", true);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        return service;
+    }
+
+    private static void append(Path file, String text) throws Exception {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
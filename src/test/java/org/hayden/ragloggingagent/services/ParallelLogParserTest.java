@@ -0,0 +1,95 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.models.LogRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelLogParserTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rangesEndOnLineBoundariesAndCoverTheFile() throws Exception {
+        Path file = writeLog(2_000);
+        byte[] bytes = Files.readAllBytes(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<ParallelLogParser.Range> ranges = ParallelLogParser.split(channel, 4096);
+            assertTrue(ranges.size() > 1);
+            long expectedStart = 0;
+            for (ParallelLogParser.Range range : ranges) {
+                assertEquals(expectedStart, range.start());
+                assertTrue(range.end() == bytes.length || bytes[(int) range.end() - 1] == '\n');
+                expectedStart = range.end();
+            }
+            assertEquals(bytes.length, expectedStart);
+        }
+    }
+
+    @Test
+    void parallelParseMatchesSequentialOrder() throws Exception {
+        Path file = writeLog(20_000);
+        LogParserService logParserService = new LogParserService();
+        List<LogRecord> expected = new ArrayList<>();
+        long expectedLines = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) continue;
+            expectedLines++;
+            LogRecord record = logParserService.parse(line);
+            if (record != null) expected.add(record);
+        }
+
+        ParallelLogParser parser = new ParallelLogParser();
+        ReflectionTestUtils.setField(parser, "logParserService", logParserService);
+        ReflectionTestUtils.setField(parser, "threads", 4);
+        ReflectionTestUtils.setField(parser, "rangeMb", 1);
+
+        List<LogRecord> actual = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        ParallelLogParser.Result result = parser.parse(file, 1000, records -> {
+            batchSizes.add(records.size());
+            actual.addAll(records);
+        });
+
+        assertEquals(expected, actual);
+        assertEquals(expectedLines, result.lines());
+        assertEquals(expected.size(), result.records());
+        for (int i = 0; i < batchSizes.size() - 1; i++) {
+            assertEquals(1000, batchSizes.get(i));
+        }
+    }
+
+    // Mostly valid lines, with CRLF endings, blank lines and malformed lines mixed in
+    private Path writeLog(int count) throws Exception {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i % 97 == 0) {
+                log.append("not a log line ").append(i).append('\n');
+            } else if (i % 89 == 0) {
+                log.append("\n");
+            } else {
+                log.append("10.0.").append(i / 256 % 256).append('.').append(i % 256)
+                        .append(" - - [27/Dec/2037:12:").append(String.format("%02d", i / 60 % 60)).append(':')
+                        .append(String.format("%02d", i % 60)).append(" +0530] \"GET /api/items/").append(i)
+                        .append(" HTTP/1.1\" ").append(i % 7 == 0 ? 500 : 200).append(' ').append(i * 3)
+                        .append(" \"-\" \"Mozilla/5.0 (X11; Linux x86_64) Gecko/20100101 Firefox/118.0\" ").append(i % 1000)
+                        .append(i % 13 == 0 ? "\r\n" : "\n");
+            }
+        }
+        Path file = dir.resolve("access.log");
+        Files.writeString(file, log, StandardCharsets.UTF_8);
+        return file;
+    }
+}
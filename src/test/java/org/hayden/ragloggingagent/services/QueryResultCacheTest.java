@@ -0,0 +1,71 @@
+package org.hayden.ragloggingagent.services;
+
+import org.hayden.ragloggingagent.models.LogBatch;
+import org.hayden.ragloggingagent.models.LogFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryResultCacheTest {
+
+    private final QueryResultCache cache = new QueryResultCache();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 10);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        cache.init();
+    }
+
+    @Test
+    void equivalentArgumentsHitUntilTheCollectionIsIngestedInto() throws Exception {
+        // Same range in two timestamp formats normalizes to the same filter
+        LogFilter iso = LogFilter.of("2037-12-27T12:00:00Z", "2037-12-27T13:00:00Z", "500", null, null, null, null, null, null, null);
+        LogFilter logFormat = LogFilter.of("27/Dec/2037:12:00:00 +0000", "27/Dec/2037:13:00:00 +0000", "500", null, null, null, null, null, null, null);
+
+        assertEquals(1, count("logs", iso));
+        assertEquals(1, count("logs", logFormat));
+        assertEquals(1, loads.get());
+
+        cache.onUpserted(new LogBatch("other", List.of()));
+        assertEquals(1, count("logs", iso));
+
+        cache.onUpserted(new LogBatch("logs", List.of()));
+        assertEquals(2, count("logs", iso));
+        assertEquals(2, count("logs", logFormat));
+        assertEquals(2L, cache.stats().get("misses"));
+        assertEquals(3L, cache.stats().get("hits"));
+    }
+
+    @Test
+    void expiredEntriesAreReloaded() throws Exception {
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+        LogFilter filter = LogFilter.of(null, null, "404", null, null, null, null, null, null, null);
+
+        count("logs", filter);
+        count("logs", filter);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void cacheIsTheLastIngestListener() {
+        // The order Spring injects List<IngestListener> in, whatever the registration order
+        List<IngestListener> listeners = new ArrayList<>(List.of(cache, new LogAggregationIndex(), batch -> {
+        }));
+        AnnotationAwareOrderComparator.sort(listeners);
+        assertEquals(cache, listeners.get(listeners.size() - 1));
+    }
+
+    private int count(String collection, LogFilter filter) throws Exception {
+        return cache.get(collection, "count", filter, loads::incrementAndGet);
+    }
+}
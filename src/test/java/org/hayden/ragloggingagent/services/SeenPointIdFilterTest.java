@@ -0,0 +1,62 @@
+package org.hayden.ragloggingagent.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeenPointIdFilterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void seenIdsSurviveARestart() {
+        SeenPointIdFilter before = create(true);
+        before.markSeen("logs", List.of(1L, 2L, Long.MAX_VALUE));
+        before.markSeen("other", List.of(3L));
+        before.saveAll();
+        assertTrue(Files.exists(dir.resolve("logs.seen-ids.v2.bloom")));
+        assertTrue(Files.exists(dir.resolve("other.seen-ids.v2.bloom")));
+
+        SeenPointIdFilter after = create(true);
+        assertTrue(after.mightContain("logs", 1L));
+        assertTrue(after.mightContain("logs", Long.MAX_VALUE));
+        assertFalse(after.mightContain("logs", 3L));
+        assertTrue(after.mightContain("other", 3L));
+    }
+
+    @Test
+    void unreadableFileStartsAnEmptyFilter() throws IOException {
+        Files.writeString(dir.resolve("logs.seen-ids.v2.bloom"), "truncated");
+        SeenPointIdFilter filter = create(true);
+        assertFalse(filter.mightContain("logs", 1L));
+        filter.markSeen("logs", List.of(1L));
+        assertTrue(filter.mightContain("logs", 1L));
+    }
+
+    @Test
+    void disabledFilterKnowsNothingAndWritesNothing() {
+        SeenPointIdFilter filter = create(false);
+        filter.markSeen("logs", List.of(1L));
+        filter.saveAll();
+        assertFalse(filter.mightContain("logs", 1L));
+        assertFalse(Files.exists(dir.resolve("logs.seen-ids.v2.bloom")));
+    }
+
+    private SeenPointIdFilter create(boolean enabled) {
+        SeenPointIdFilter filter = new SeenPointIdFilter();
+        ReflectionTestUtils.setField(filter, "enabled", enabled);
+        ReflectionTestUtils.setField(filter, "directory", dir.toString());
+        ReflectionTestUtils.setField(filter, "expectedIds", 1000L);
+        ReflectionTestUtils.setField(filter, "falsePositiveRate", 0.0001);
+        return filter;
+    }
+}
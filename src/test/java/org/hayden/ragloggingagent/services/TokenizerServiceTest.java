@@ -0,0 +1,76 @@
+package org.hayden.ragloggingagent.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenizerServiceTest {
+
+    private final TokenizerService tokenizer = new TokenizerService();
+
+    @Test
+    void packFillsEachRequestUpToBothCeilings() {
+        List<TokenizerService.TokenBatch> batches = tokenizer.pack(List.of(3, 3, 3, 5, 1, 1, 1, 1, 1), 6, 3);
+
+        assertEquals(List.of(
+                new TokenizerService.TokenBatch(List.of(0, 1), 6),
+                new TokenizerService.TokenBatch(List.of(2), 3),
+                new TokenizerService.TokenBatch(List.of(3, 4), 6),
+                new TokenizerService.TokenBatch(List.of(5, 6, 7), 3),
+                new TokenizerService.TokenBatch(List.of(8), 1)
+        ), batches);
+    }
+
+    @Test
+    void inputOverTheTokenCeilingGoesAlone() {
+        assertEquals(List.of(
+                new TokenizerService.TokenBatch(List.of(0), 2),
+                new TokenizerService.TokenBatch(List.of(1), 10),
+                new TokenizerService.TokenBatch(List.of(2), 2)
+        ), tokenizer.pack(List.of(2, 10, 2), 6, 3));
+        assertEquals(List.of(), tokenizer.pack(List.of(), 6, 3));
+    }
+
+    @Test
+    void packedBatchesRespectTheCeilingsAndKeepInputOrder() {
+        Random random = new Random(42);
+        List<Integer> tokenCounts = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            tokenCounts.add(1 + random.nextInt(400));
+        }
+
+        List<TokenizerService.TokenBatch> batches = tokenizer.pack(tokenCounts, 8191, 64);
+
+        List<Integer> order = new ArrayList<>();
+        for (int b = 0; b < batches.size(); b++) {
+            TokenizerService.TokenBatch batch = batches.get(b);
+            assertTrue(batch.tokens() <= 8191, "batch " + b + " has " + batch.tokens() + " tokens");
+            assertTrue(batch.indexes().size() <= 64, "batch " + b + " has " + batch.indexes().size() + " inputs");
+            assertEquals(batch.indexes().stream().mapToInt(tokenCounts::get).sum(), batch.tokens());
+            if (b < batches.size() - 1) {
+                // Greedy: the next input would have broken a ceiling
+                TokenizerService.TokenBatch next = batches.get(b + 1);
+                assertTrue(batch.indexes().size() == 64
+                        || batch.tokens() + tokenCounts.get(next.indexes().get(0)) > 8191, "batch " + b + " closed early");
+            }
+            order.addAll(batch.indexes());
+        }
+        assertEquals(IntStream.range(0, tokenCounts.size()).boxed().toList(), order);
+    }
+
+    @Test
+    void truncateCutsAtTheTokenLimit() {
+        String text = "GET /api/v1/orders?id=42 HTTP/1.1 200 ".repeat(20);
+        String truncated = tokenizer.truncate(text, 10);
+
+        assertEquals(10, tokenizer.countTokens(truncated));
+        assertTrue(text.startsWith(truncated));
+        assertEquals(text, tokenizer.truncate(text, tokenizer.countTokens(text)));
+    }
+}
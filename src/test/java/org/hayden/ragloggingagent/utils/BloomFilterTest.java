@@ -0,0 +1,47 @@
+package org.hayden.ragloggingagent.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void readsBackEveryKeyWithinTheFalsePositiveRate(@TempDir Path dir) throws IOException {
+        BloomFilter written = BloomFilter.create(10_000, 0.001);
+        for (long key = 0; key < 10_000; key++) {
+            written.put(PointIds.of("line " + key));
+        }
+        Path path = dir.resolve("logs.bloom");
+        written.writeTo(path);
+        // Written through a temporary file that is moved into place
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+
+        BloomFilter read = BloomFilter.readFrom(path);
+        for (long key = 0; key < 10_000; key++) {
+            assertTrue(read.mightContain(PointIds.of("line " + key)));
+        }
+        int falsePositives = 0;
+        for (long key = 0; key < 100_000; key++) {
+            if (read.mightContain(PointIds.of("other " + key))) falsePositives++;
+        }
+        assertTrue(falsePositives < 300, falsePositives + " false positives in 100000");
+    }
+
+    @Test
+    void rejectsAFileThatIsNotAFilter(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("logs.bloom");
+        Files.writeString(path, "not a bloom filter");
+        assertThrows(IOException.class, () -> BloomFilter.readFrom(path));
+    }
+}
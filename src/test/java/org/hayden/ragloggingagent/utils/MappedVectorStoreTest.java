@@ -0,0 +1,94 @@
+package org.hayden.ragloggingagent.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedVectorStoreTest {
+
+    // 36-byte header plus 8 floats: three records fill 204 bytes of a 256-byte segment, so every
+    // fourth record skips to the next segment
+    private static final int SEGMENT_BYTES = 256;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void vectorsSurviveCloseAndReopenAcrossSegments() throws Exception {
+        Path file = dir.resolve("embeddings.bin");
+        try (MappedVectorStore store = new MappedVectorStore(file, SEGMENT_BYTES, 1 << 20)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(store.put(key(i), vector(i, 8)));
+            }
+            // A second write of the same key keeps the first vector
+            assertTrue(store.put(key(0), vector(99, 8)));
+        }
+
+        try (MappedVectorStore store = new MappedVectorStore(file, SEGMENT_BYTES, 1 << 20)) {
+            assertEquals(10, store.size());
+            for (int i = 0; i < 10; i++) {
+                assertArrayEquals(vector(i, 8), store.get(key(i)), "vector " + i);
+            }
+            assertNull(store.get(key(10)));
+
+            // Writing continues after the last record instead of overwriting it
+            assertTrue(store.put(key(10), vector(10, 4)));
+        }
+
+        try (MappedVectorStore store = new MappedVectorStore(file, SEGMENT_BYTES, 1 << 20)) {
+            assertEquals(11, store.size());
+            assertArrayEquals(vector(9, 8), store.get(key(9)));
+            assertArrayEquals(vector(10, 4), store.get(key(10)));
+        }
+    }
+
+    @Test
+    void keyWithTheSamePrefixIsNotConfusedWithTheStoredOne() throws Exception {
+        try (MappedVectorStore store = new MappedVectorStore(dir.resolve("embeddings.bin"), SEGMENT_BYTES, 1 << 20)) {
+            store.put(key(1), vector(1, 8));
+            byte[] other = key(1);
+            other[31] ^= 1;
+            assertNull(store.get(other));
+        }
+    }
+
+    @Test
+    void fullStoreRefusesNewVectorsAndKeepsTheOldOnes() throws Exception {
+        Path file = dir.resolve("embeddings.bin");
+        try (MappedVectorStore store = new MappedVectorStore(file, SEGMENT_BYTES, 2 * SEGMENT_BYTES)) {
+            // Two segments hold six records
+            for (int i = 0; i < 6; i++) {
+                assertTrue(store.put(key(i), vector(i, 8)));
+            }
+            assertFalse(store.put(key(6), vector(6, 8)));
+            assertNull(store.get(key(6)));
+            assertEquals(6, store.size());
+        }
+        try (MappedVectorStore store = new MappedVectorStore(file, SEGMENT_BYTES, 2 * SEGMENT_BYTES)) {
+            assertEquals(6, store.size());
+            assertArrayEquals(vector(5, 8), store.get(key(5)));
+        }
+    }
+
+    private static byte[] key(int i) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) i);
+        return key;
+    }
+
+    private static float[] vector(int i, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] = i + d / 10f;
+        }
+        return vector;
+    }
+}
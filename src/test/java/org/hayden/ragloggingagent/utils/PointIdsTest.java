@@ -0,0 +1,35 @@
+package org.hayden.ragloggingagent.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PointIdsTest {
+
+    @Test
+    void firstEightDigestBytesBigEndian() {
+        // SHA-256("hello") = 2cf24dba5fb0a30e..., sign bit already clear
+        assertEquals(0x2cf24dba5fb0a30eL, PointIds.of("hello"));
+        // A log line whose digest starts d6a5fee82999a04a
+        String line = "10.0.0.1 - - [27/Dec/2037:12:00:00 +0000] \"GET /api/1 HTTP/1.1\" 200 512 \"-\" \"Mozilla/5.0\" 42";
+        assertEquals(0x56a5fee82999a04aL, PointIds.of(line));
+    }
+
+    @Test
+    void signBitIsCleared() {
+        // SHA-256("abc") = ba7816bf8f01cfea..., top bit set in the digest but not in the ID
+        assertEquals(0x3a7816bf8f01cfeaL, PointIds.of("abc"));
+        // Same line, same ID: IDs are how re-ingested lines are recognized
+        assertEquals(PointIds.of("abc"), PointIds.of(new String("abc")));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(PointIds.of("line " + i) >= 0);
+        }
+    }
+
+    @Test
+    void hashesTheUtf8Bytes() {
+        // SHA-256 of c3 a9, the UTF-8 encoding of "é", starts 4a99557e4033c353
+        assertEquals(0x4a99557e4033c353L, PointIds.of("é"));
+    }
+}